@@ -0,0 +1,157 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * SyntheticCorpusの入力を規模ごとに作り、WikipediaYomigana、ExtractWikipediaWord、GenDicを
+ * 順に別のJVMで実行して、規模に対する処理速度とヒープの最大使用量を測る。
+ *
+ * 各ツールが書き出す*.metrics.json(BuildMetrics)から経過時間、件数、ヒープの最大使用量を読み、
+ * 規模ごとの結果をscaling-results.jsonに書く。
+ *
+ * java -cp bin:lib/jdbm-1.0.jar ScalingBench [--scales 1,10,100] [--dir DIR] [--seed N] [--jvm-args ARGS]
+ */
+public class ScalingBench {
+
+    static String jvm = new File(System.getProperty("java.home"), "bin/java").getPath();
+    static String classPath = absoluteClassPath();
+    static List<String> jvmArgs = new ArrayList<>();
+
+    static String absoluteClassPath() {
+        List<String> paths = new ArrayList<>();
+        for (String path : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            paths.add(new File(path).getAbsolutePath());
+        }
+        return String.join(File.pathSeparator, paths);
+    }
+
+    // dirでtoolを実行し、書き出されたtool.metrics.jsonの内容を返す
+    static String run(File dir, String tool) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(jvm);
+        command.add("-Dfile.encoding=UTF-8");
+        command.addAll(jvmArgs);
+        command.add("-cp");
+        command.add(classPath);
+        command.add(tool);
+        Process process = new ProcessBuilder(command).directory(dir).inheritIO().start();
+        int status = process.waitFor();
+        if (status != 0) {
+            throw new IOException(tool + "が失敗した: " + status);
+        }
+        return new String(Files.readAllBytes(new File(dir, tool + ".metrics.json").toPath()),
+                StandardCharsets.UTF_8);
+    }
+
+    // stageの段階(nullなら全体)の値。BuildMetricsは段階ごとに一行で書く
+    static long value(String json, String stage, String key) {
+        String scope = json;
+        if (stage != null) {
+            int start = json.indexOf("\"" + stage + "\": {");
+            if (start < 0) {
+                return 0;
+            }
+            scope = json.substring(start, json.indexOf('\n', start));
+        }
+        Matcher m = Pattern.compile("\"" + Pattern.quote(key) + "\": (\\d+)").matcher(scope);
+        return m.find() ? Long.parseLong(m.group(1)) : 0;
+    }
+
+    static long perSec(long count, long millis) {
+        return millis > 0 ? count * 1000 / millis : 0;
+    }
+
+    static public void main(String argv[]) throws Exception {
+        int[] scales = { 1, 10, 100 };
+        File root = new File("scaling");
+        long seed = 1;
+        for (int i = 0; i < argv.length; i++) {
+            switch (argv[i]) {
+                case "--scales": {
+                    String[] ss = argv[++i].split(",");
+                    scales = new int[ss.length];
+                    for (int j = 0; j < ss.length; j++) {
+                        scales[j] = Integer.parseInt(ss[j].strip());
+                    }
+                    break;
+                }
+                case "--dir":
+                    root = new File(argv[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(argv[++i]);
+                    break;
+                case "--jvm-args":
+                    for (String arg : argv[++i].split(" +")) {
+                        jvmArgs.add(arg);
+                    }
+                    break;
+                default:
+                    System.err.println("不明なオプション: " + argv[i]);
+                    System.exit(1);
+            }
+        }
+
+        List<String> results = new ArrayList<>();
+        System.out.printf("%6s %10s %12s %12s %12s %12s %10s %10s%n", "scale", "dumpMB", "dumpMB/s",
+                "lexRows/s", "entries/s", "writeDicMs", "totalMs", "peakMB");
+        for (int scale : scales) {
+            File dir = new File(root, "x" + scale);
+            SyntheticCorpus.generate(dir, scale, seed);
+            File data = new File(dir, "data");
+            long dumpBytes = new File(data, DumpScanner.DUMP.getName()).length();
+
+            String yomigana = run(dir, "WikipediaYomigana");
+            // GenDicは抽出した読みを入力にする
+            Files.copy(new File(dir, "WikipediaYomigana.txt").toPath(),
+                    new File(data, "WikipediaYomigana.txt").toPath(), StandardCopyOption.REPLACE_EXISTING);
+            String word = run(dir, "ExtractWikipediaWord");
+            String genDic = run(dir, "GenDic");
+
+            long yomiganaScan = value(yomigana, "scan", "wallMs");
+            long wordScan = value(word, "scan", "wallMs");
+            long lexRows = value(genDic, "read-lex", "rows");
+            long lexMs = value(genDic, "read-lex", "wallMs");
+            long entries = value(genDic, "write-dic", "entries");
+            long writeMs = value(genDic, "write-dic", "wallMs");
+            long totalMs = value(yomigana, null, "wallMs") + value(word, null, "wallMs")
+                    + value(genDic, null, "wallMs");
+            long peakHeap = Math.max(value(genDic, null, "peakHeapBytes"),
+                    Math.max(value(yomigana, null, "peakHeapBytes"), value(word, null, "peakHeapBytes")));
+            // ダンプファイルは二つの抽出処理で一度ずつ読む
+            long dumpPerSec = perSec(dumpBytes * 2, yomiganaScan + wordScan);
+
+            System.out.printf("%6d %10.1f %12.1f %12d %12d %12d %10d %10.1f%n", scale, dumpBytes / 1048576.0,
+                    dumpPerSec / 1048576.0, perSec(lexRows, lexMs), perSec(entries, writeMs), writeMs, totalMs,
+                    peakHeap / 1048576.0);
+            results.add("  {\"scale\": " + scale
+                    + ", \"dumpBytes\": " + dumpBytes
+                    + ", \"dumpBytesPerSec\": " + dumpPerSec
+                    + ", \"wikipediaYomiganaMs\": " + yomiganaScan
+                    + ", \"extractWikipediaWordMs\": " + wordScan
+                    + ", \"lexRows\": " + lexRows
+                    + ", \"lexRowsPerSec\": " + perSec(lexRows, lexMs)
+                    + ", \"sortMs\": " + value(genDic, "sort", "wallMs")
+                    + ", \"entries\": " + entries
+                    + ", \"entriesPerSec\": " + perSec(entries, writeMs)
+                    + ", \"writeDicMs\": " + writeMs
+                    + ", \"genDicPeakHeapBytes\": " + value(genDic, null, "peakHeapBytes")
+                    + ", \"peakHeapBytes\": " + peakHeap
+                    + ", \"totalMs\": " + totalMs + "}");
+        }
+
+        BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(new File(root, "scaling-results.json")), "UTF-8"));
+        bw.write("[\n" + String.join(",\n", results) + "\n]\n");
+        bw.close();
+    }
+}
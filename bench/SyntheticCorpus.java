@@ -0,0 +1,278 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.Random;
+
+/*
+ * 規模を測るための合成の入力を作る。同じ種と規模からは常に同じ内容になる。
+ *
+ * data/small_lex.csv、core_lex.csv、notcore_lex.csv: Sudachiの*_lex.csvと同じ19列の行。
+ *   名詞、動詞、形容詞などの品詞を実際の辞書に近い割合で混ぜ、動詞と形容詞には活用型と活用形を付ける。
+ *   表記のエスケープ(,など)、記号、ＡＡ、分割タイプC、促音で終わる語、平仮名以外を含む読みも混ぜる。
+ * data/jawiki-latest-pages-articles.xml: ダンプファイルと同じ形のXML。
+ *   本文に「'''表記'''（よみ）」と「{{読み仮名|'''表記'''|よみ}}」を含む。名前空間0以外の
+ *   ページとリダイレクト、実体参照で書かれたタグも混ぜる。
+ *
+ * 規模1で*_lex.csvは合わせて22000行、ダンプファイルは2000ページ。
+ */
+public class SyntheticCorpus {
+    static final int SMALL_ROWS = 2000;
+    static final int CORE_ROWS = 10000;
+    static final int NOTCORE_ROWS = 10000;
+    static final int PAGES = 2000;
+
+    // {品詞1, 品詞2, 品詞3, 品詞4, 活用型, 活用形, 重み}
+    static final String[][] POS = {
+            { "名詞", "普通名詞", "一般", "*", "*", "*", "40" },
+            { "名詞", "普通名詞", "サ変可能", "*", "*", "*", "8" },
+            { "名詞", "固有名詞", "人名", "姓", "*", "*", "4" },
+            { "名詞", "固有名詞", "人名", "名", "*", "*", "4" },
+            { "名詞", "固有名詞", "地名", "一般", "*", "*", "4" },
+            { "名詞", "数詞", "*", "*", "*", "*", "1" },
+            { "代名詞", "*", "*", "*", "*", "*", "1" },
+            { "動詞", "一般", "*", "*", "五段-カ行", "終止形-一般", "3" },
+            { "動詞", "一般", "*", "*", "五段-カ行", "未然形-一般", "2" },
+            { "動詞", "一般", "*", "*", "五段-ラ行", "連用形-促音便", "2" },
+            { "動詞", "一般", "*", "*", "五段-ラ行", "意志推量形", "1" },
+            { "動詞", "一般", "*", "*", "五段-ラ行", "仮定形-一般", "2" },
+            { "動詞", "一般", "*", "*", "上一段-カ行", "連用形-一般", "2" },
+            { "動詞", "一般", "*", "*", "下一段-ア行", "連用形-一般", "2" },
+            { "動詞", "非自立可能", "*", "*", "カ行変格", "連用形-一般", "1" },
+            { "動詞", "非自立可能", "*", "*", "カ行変格", "未然形-一般", "1" },
+            { "動詞", "非自立可能", "*", "*", "サ行変格", "連用形-一般", "1" },
+            { "形容詞", "一般", "*", "*", "形容詞", "終止形-一般", "2" },
+            { "形容詞", "一般", "*", "*", "形容詞", "未然形-一般", "1" },
+            { "形容詞", "一般", "*", "*", "形容詞", "仮定形-一般", "1" },
+            { "形容詞", "一般", "*", "*", "形容詞", "連用形-促音便", "1" },
+            { "形状詞", "一般", "*", "*", "*", "*", "2" },
+            { "副詞", "*", "*", "*", "*", "*", "3" },
+            { "接尾辞", "名詞的", "一般", "*", "*", "*", "1" },
+            { "接尾辞", "動詞的", "*", "*", "*", "*", "1" },
+            { "助動詞", "*", "*", "*", "助動詞-タ", "連用形-促音便", "1" },
+            { "感動詞", "一般", "*", "*", "*", "*", "1" },
+            { "記号", "一般", "*", "*", "*", "*", "1" },
+            { "補助記号", "一般", "*", "*", "*", "*", "1" },
+            { "補助記号", "ＡＡ", "顔文字", "*", "*", "*", "1" },
+    };
+    static final String[] SYMBOLS = { "★", "※", "〒", "♪", "→", "\\u0028", "\\u002C", "𠀋" };
+    static final String[] ESCAPES = { "\\u002C", "\\u002F", "\\u0028", "\\u0029", "\\u007C", "\\u0022" };
+
+    final Random random;
+    final int totalWeight;
+
+    SyntheticCorpus(long seed) {
+        random = new Random(seed);
+        int sum = 0;
+        for (String[] pos : POS) {
+            sum += Integer.parseInt(pos[6]);
+        }
+        totalWeight = sum;
+    }
+
+    String[] pos() {
+        int r = random.nextInt(totalWeight);
+        for (String[] pos : POS) {
+            r -= Integer.parseInt(pos[6]);
+            if (r < 0) {
+                return pos;
+            }
+        }
+        return POS[0];
+    }
+
+    // ぁからゖまでのうち、小書きの文字を除いたもの
+    char hiragana() {
+        while (true) {
+            char ch = (char) ('あ' + random.nextInt('ゔ' - 'あ'));
+            if ("ぁぃぅぇぉっゃゅょゎ".indexOf(ch) < 0) {
+                return ch;
+            }
+        }
+    }
+
+    String reading(int min, int max) {
+        StringBuilder sb = new StringBuilder();
+        int n = min + random.nextInt(max - min + 1);
+        for (int i = 0; i < n; i++) {
+            sb.append(hiragana());
+        }
+        return sb.toString();
+    }
+
+    // よく使われる漢字の範囲から選ぶ
+    char kanji() {
+        return (char) (0x4E00 + random.nextInt(6000));
+    }
+
+    static String katakana(String s) {
+        StringBuilder sb = new StringBuilder();
+        for (char ch : s.toCharArray()) {
+            sb.append(ch >= 'ぁ' && ch <= 'ゖ' ? (char) (ch - 'ぁ' + 'ァ') : ch);
+        }
+        return sb.toString();
+    }
+
+    // 読みに合う表記。漢字だけ、漢字と送り仮名、かなだけのどれか
+    String surface(String reading) {
+        double k = random.nextDouble();
+        StringBuilder sb = new StringBuilder();
+        if (k < 0.6) {
+            int n = 1 + random.nextInt(Math.max(1, Math.min(3, reading.length() / 2)));
+            for (int i = 0; i < n; i++) {
+                sb.append(kanji());
+            }
+        } else if (k < 0.85) {
+            sb.append(kanji()).append(reading.substring(reading.length() - 1));
+        } else if (k < 0.95) {
+            sb.append(katakana(reading));
+        } else {
+            sb.append(reading);
+        }
+        return sb.toString();
+    }
+
+    String lexRow() {
+        String[] pos = pos();
+        String reading = reading(1, 5);
+        String surface;
+        if (pos[5].equals("連用形-促音便") || pos[5].equals("意志推量形") || random.nextInt(50) == 0) {
+            reading += "っ";
+        }
+        if (pos[0].endsWith("記号") && random.nextBoolean()) {
+            reading = "きごう";
+            surface = SYMBOLS[random.nextInt(SYMBOLS.length)];
+        } else if (pos[1].equals("ＡＡ")) {
+            surface = "(^_^" + reading + ")";
+        } else {
+            surface = surface(reading);
+            if (reading.endsWith("っ") && !surface.endsWith("っ")) {
+                surface += "っ";
+            }
+            if (random.nextInt(40) == 0) {
+                surface += ESCAPES[random.nextInt(ESCAPES.length)];
+            }
+        }
+        String readingColumn = katakana(reading);
+        // 読みに長音や英字を含む語
+        if (random.nextInt(30) == 0) {
+            readingColumn += random.nextBoolean() ? "ー" : "Ａ";
+        }
+        int cost;
+        switch (random.nextInt(20)) {
+            case 0:
+                cost = 10000;
+                break;
+            case 1:
+                cost = 0;
+                break;
+            default:
+                cost = 2000 + random.nextInt(12000);
+                break;
+        }
+        String split = random.nextInt(10) == 0 ? "C" : random.nextInt(3) == 0 ? "B" : "A";
+        return String.join(",", surface, "1", "1", Integer.toString(cost), surface, pos[0], pos[1], pos[2],
+                pos[3], pos[4], pos[5], readingColumn, surface, "*", split, "*", "*", "*", "*");
+    }
+
+    void writeLex(File file, int rows) throws IOException {
+        try (BufferedWriter bw = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), "UTF-8"))) {
+            for (int i = 0; i < rows; i++) {
+                bw.write(lexRow());
+                bw.write('\n');
+            }
+        }
+    }
+
+    static String escape(String s) {
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    // 一ページの本文。ダンプファイルと同じく実体参照で書く前のもの
+    String pageText(int page) {
+        StringBuilder sb = new StringBuilder();
+        String reading = reading(2, 6);
+        String surface = surface(reading);
+        if (random.nextInt(3) == 0) {
+            sb.append("{{読み仮名|'''").append(surface).append("'''|").append(reading).append("}}は、");
+        } else {
+            sb.append("'''").append(surface).append("'''（").append(reading);
+            if (random.nextInt(4) == 0) {
+                sb.append("、").append(reading(2, 6));
+            }
+            sb.append("）は、");
+        }
+        sb.append("[[日本]]の[[記事").append(page).append("]]である。<ref name=\"a\">出典</ref>\n");
+        int lines = 3 + random.nextInt(8);
+        for (int i = 0; i < lines; i++) {
+            switch (random.nextInt(8)) {
+                case 0:
+                    reading = reading(2, 6);
+                    sb.append("* '''").append(surface(reading)).append("'''（").append(reading).append("）\n");
+                    break;
+                case 1:
+                    reading = reading(2, 6);
+                    sb.append("{{読み仮名_ruby不使用|").append(surface(reading)).append("|").append(reading)
+                            .append("}}とも呼ばれる。\n");
+                    break;
+                case 2:
+                    sb.append("{{Infobox\n| 名称 = ").append(surface(reading(2, 4))).append("\n}}\n");
+                    break;
+                default:
+                    sb.append("本文の").append(surface(reading(2, 6))).append("は&nbsp;[[")
+                            .append(surface(reading(2, 6))).append("]]と<br />関係がある。\n");
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+
+    void writeDump(File file, int pages) throws IOException {
+        try (BufferedWriter bw = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), "UTF-8"))) {
+            bw.write("<mediawiki xmlns=\"http://www.mediawiki.org/xml/export-0.10/\" version=\"0.10\" xml:lang=\"ja\">\n");
+            bw.write("  <siteinfo>\n    <sitename>Wikipedia</sitename>\n  </siteinfo>\n");
+            for (int i = 0; i < pages; i++) {
+                // 1割はテンプレートなど、1割はリダイレクト
+                int ns = random.nextInt(10) == 0 ? 10 : 0;
+                boolean redirect = random.nextInt(10) == 0;
+                bw.write("  <page>\n");
+                bw.write("    <title>" + (ns == 10 ? "Template:" : "") + "記事" + i + "</title>\n");
+                bw.write("    <ns>" + ns + "</ns>\n");
+                bw.write("    <id>" + (i + 1) + "</id>\n");
+                if (redirect) {
+                    bw.write("    <redirect title=\"記事" + random.nextInt(pages) + "\" />\n");
+                }
+                bw.write("    <revision>\n      <id>" + (i + 1) + "</id>\n");
+                String text = pageText(i);
+                bw.write("      <text bytes=\"" + text.length() + "\" xml:space=\"preserve\">");
+                bw.write(escape(text));
+                bw.write("</text>\n    </revision>\n  </page>\n");
+            }
+            bw.write("</mediawiki>\n");
+        }
+    }
+
+    // dir/data/に規模scaleの入力を書く
+    static void generate(File dir, int scale, long seed) throws IOException {
+        File data = new File(dir, "data");
+        if (!data.isDirectory() && !data.mkdirs()) {
+            throw new IOException("ディレクトリを作れない: " + data);
+        }
+        SyntheticCorpus corpus = new SyntheticCorpus(seed);
+        corpus.writeLex(new File(data, "small_lex.csv"), SMALL_ROWS * scale);
+        corpus.writeLex(new File(data, "core_lex.csv"), CORE_ROWS * scale);
+        corpus.writeLex(new File(data, "notcore_lex.csv"), NOTCORE_ROWS * scale);
+        corpus.writeDump(new File(data, DumpScanner.DUMP.getName()), PAGES * scale);
+    }
+
+    static public void main(String argv[]) throws Exception {
+        if (argv.length < 2) {
+            System.err.println("使い方: SyntheticCorpus ディレクトリ 規模 [種]");
+            System.exit(1);
+        }
+        generate(new File(argv[0]), Integer.parseInt(argv[1]), argv.length > 2 ? Long.parseLong(argv[2]) : 1);
+    }
+}
@@ -0,0 +1,314 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.function.IntSupplier;
+import jdbm.btree.BTree;
+import jdbm.helper.Tuple;
+import jdbm.helper.TupleBrowser;
+
+/*
+ * DicBench(dicbenchパッケージのJMHのベンチマーク)が測る処理と、その入力。
+ *
+ * JMHは無名パッケージのベンチマークを作れず、名前付きのパッケージからは無名パッケージのクラスを
+ * 参照できないので、ここで入力を読んで処理をCallableにまとめ、dicbench.Workloadsがリフレクションで
+ * 一度だけ取り出す。一回の呼び出しでまとめて処理する行や読みの数はIntSupplierで返す。
+ *
+ * 入力は./data/small_lex.csv、ダンプファイル、生成済みのsystem_dicから取る。
+ * ないものを使うグループはFileNotFoundExceptionにする。ダンプファイルがなければ代表的な行を使う。
+ */
+public class DicWorkloads {
+
+    interface Body {
+        // 結果はJMHのBlackholeに渡す
+        Object run() throws Exception;
+    }
+
+    static class Benchmark implements Callable<Object>, IntSupplier {
+        final String name;
+        // 一回の呼び出しで処理する件数
+        final int operations;
+        final Body body;
+
+        Benchmark(String name, int operations, Body body) {
+            this.name = name;
+            this.operations = operations;
+            this.body = body;
+        }
+
+        @Override
+        public Object call() throws Exception {
+            return body.run();
+        }
+
+        @Override
+        public int getAsInt() {
+            return operations;
+        }
+    }
+
+    static final int LEX_ROWS = 20000;
+    static final int DUMP_LINES = 5000;
+    static final int LOOKUPS = 10000;
+    // 前方一致検索で一つの読みから取り出す件数の上限
+    static final int PREFIX_LIMIT = 16;
+
+    // ダンプファイルがない場合の行
+    static final String[] SAMPLE_LINES = {
+            "'''東京都'''（とうきょうと）は、[[日本]]の[[首都]]である。",
+            "'''大和川'''（やまとがわ）は、[[奈良県]]および[[大阪府]]を流れる[[一級河川]]。",
+            "'''佐藤 太郎'''（さとう たろう、[[1950年]] - ）は、日本の[[政治家]]。",
+            "'''銀河鉄道の夜'''（ぎんがてつどうのよる）は、[[宮沢賢治]]の童話。",
+            "{{読み仮名|'''紫式部'''|むらさきしきぶ}}は、平安時代中期の作家。",
+            "{{読み仮名_ruby不使用|'''安倍晴明'''|あべのせいめい}}は、平安時代の陰陽師。",
+            "{{読み仮名|'''北海道'''|ほっかいどう|Hokkaidō}}は、日本の北部に位置する島。",
+            "'''&amp;quot;記号&amp;quot;'''（きごう）は、対象を指し示すもの。",
+    };
+
+    static List<String> readLines(File file, int limit) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while (lines.size() < limit && (line = br.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    // ダンプファイルの先頭からmarkersを含む行を集める
+    static List<String> dumpLines(BytePatterns markers) throws IOException {
+        List<String> lines = new ArrayList<>();
+        if (DumpScanner.DUMP.exists()) {
+            try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(DumpScanner.DUMP), StandardCharsets.UTF_8))) {
+                String line;
+                while (lines.size() < DUMP_LINES && (line = br.readLine()) != null) {
+                    if (markers.foundIn(line)) {
+                        lines.add(line);
+                    }
+                }
+            }
+        }
+        if (lines.isEmpty()) {
+            for (String line : SAMPLE_LINES) {
+                if (markers.foundIn(line)) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+
+    // 名前の順に並べたベンチマーク
+    static Map<String, Callable<Object>> byName(List<Benchmark> list) {
+        Map<String, Callable<Object>> map = new LinkedHashMap<>();
+        for (Benchmark benchmark : list) {
+            map.put(benchmark.name, benchmark);
+        }
+        return map;
+    }
+
+    public static Map<String, Callable<Object>> lex(String filename) throws IOException {
+        List<Benchmark> list = new ArrayList<>();
+        File file = new File(filename);
+        if (!file.exists()) {
+            throw new FileNotFoundException("lexのベンチマークの入力がない: " + file);
+        }
+        List<String> rows = readLines(file, LEX_ROWS);
+        String text = String.join("\n", rows) + "\n";
+
+        // 語尾を補完する行だけ
+        StringBuilder sb = new StringBuilder();
+        List<String> readings = new ArrayList<>();
+        List<String> surfaces = new ArrayList<>();
+        int conjugated = 0;
+        LexRow row = new LexRow(new StringReader(text));
+        while (row.next()) {
+            String form = row.get(10);
+            if (row.get(9).contains("変格") || form.equals("連用形-一般") || form.equals("未然形-一般")
+                    || form.equals("仮定形-一般")) {
+                sb.append(row.line()).append('\n');
+                conjugated++;
+            }
+            readings.add(row.get(11));
+            surfaces.add(row.get(4));
+        }
+        String conjugatedText = sb.toString();
+        int expandRows = conjugated;
+
+        list.add(new Benchmark("lexParse", rows.size(), () -> {
+            LexRow r = new LexRow(new StringReader(text));
+            int n = 0;
+            while (r.next()) {
+                n += r.unescape(11, true).length() + r.unescape(4, false).length() + r.get(5).length();
+            }
+            return n;
+        }));
+        list.add(new Benchmark("lexProcess", rows.size(), () -> {
+            LexRow r = new LexRow(new StringReader(text));
+            LexBuffer buf = new LexBuffer();
+            while (r.next()) {
+                GenDic.processLexLine(r, buf);
+            }
+            return buf.entries.size();
+        }));
+        if (expandRows > 0) {
+            list.add(new Benchmark("lexExpand", expandRows, () -> {
+                LexRow r = new LexRow(new StringReader(conjugatedText));
+                LexBuffer buf = new LexBuffer();
+                while (r.next()) {
+                    GenDic.processLexLine(r, buf);
+                }
+                return buf.entries.size();
+            }));
+        }
+        list.add(new Benchmark("toWideHiragana", readings.size(), () -> {
+            int n = 0;
+            for (String reading : readings) {
+                n += GenDic.toWideHiragana(reading).length();
+            }
+            return n;
+        }));
+        list.add(new Benchmark("unescape", surfaces.size(), () -> {
+            int n = 0;
+            for (String surface : surfaces) {
+                n += GenDic.unescape(surface).length();
+            }
+            return n;
+        }));
+
+        // 補完した後のエントリをソートする
+        LexBuffer buf = new LexBuffer();
+        row = new LexRow(new StringReader(text));
+        while (row.next()) {
+            GenDic.processLexLine(row, buf);
+        }
+        EntryArena entries = buf.entries;
+        list.add(new Benchmark("entrySort", entries.size(), () -> {
+            EntrySorter sorter = new EntrySorter(0, null);
+            sorter.addAll(entries);
+            EntrySorter.Cursor cursor = sorter.cursor();
+            int n = 0;
+            while (cursor.next()) {
+                n += cursor.cost();
+            }
+            sorter.close();
+            return n;
+        }));
+        return byName(list);
+    }
+
+    public static Map<String, Callable<Object>> dump() throws IOException {
+        List<Benchmark> list = new ArrayList<>();
+        List<String> yomigana = dumpLines(WikipediaYomigana.MARKERS);
+        List<String> words = dumpLines(ExtractWikipediaWord.MARKERS);
+        list.add(new Benchmark("processYomiganaLine", yomigana.size(), () -> {
+            Set<String> dict = new HashSet<>();
+            for (String line : yomigana) {
+                WikipediaYomigana.processYomiganaLine(line, dict);
+            }
+            return dict.size();
+        }));
+        list.add(new Benchmark("parseLine", words.size(), () -> {
+            Set<String> set = new HashSet<>();
+            for (String line : words) {
+                ExtractWikipediaWord.parseLine(line, set);
+            }
+            return set.size();
+        }));
+        return byName(list);
+    }
+
+    // predictPrefixはGenDic --predictの索引があるときだけ
+    public static Map<String, Callable<Object>> lookup(String name) throws IOException {
+        List<Benchmark> list = new ArrayList<>();
+        File text = new File(name + ".txt");
+        if (!text.exists() || !new File(name + ".db").exists()) {
+            throw new FileNotFoundException("検索のベンチマークの入力がない: " + name + ".dbと" + name + ".txt");
+        }
+        List<String> readings = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                new FileInputStream(text), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                readings.add(line.substring(0, line.indexOf('\t')));
+            }
+        }
+        // 毎回同じ読みを引くよう乱数の種を固定する
+        Random random = new Random(1);
+        String[] hits = new String[LOOKUPS];
+        String[] prefixes = new String[LOOKUPS];
+        String[] misses = new String[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            String reading = readings.get(random.nextInt(readings.size()));
+            hits[i] = reading;
+            prefixes[i] = reading.substring(0, Math.min(reading.length(), 1 + random.nextInt(2)));
+            // 9割は辞書にない読み
+            misses[i] = random.nextInt(10) == 0 ? reading : reading + "ゔ";
+        }
+        BTreeDic dic = new BTreeDic(name, GenDic.BTREE_NAME, false, null);
+        list.add(new Benchmark("lookupRandom", LOOKUPS, () -> {
+            int n = 0;
+            for (String reading : hits) {
+                n += dic.surfaces(reading).length;
+            }
+            return n;
+        }));
+        list.add(new Benchmark("lookupPrefix", LOOKUPS, () -> {
+            int n = 0;
+            for (String prefix : prefixes) {
+                n += prefixScan(dic.tree, prefix);
+            }
+            return n;
+        }));
+        list.add(new Benchmark("lookupMiss", LOOKUPS, () -> {
+            int n = 0;
+            for (String reading : misses) {
+                String[] surfaces = dic.surfaces(reading);
+                n += surfaces == null ? 0 : surfaces.length;
+            }
+            return n;
+        }));
+        // GenDic --predictの索引があればlookupPrefixと同じ接頭辞で引く
+        File predict = new File(name + ".pred");
+        if (predict.exists()) {
+            File poolFile = new File(name + ".pool");
+            PredictDic predictDic = new PredictDic(predict, poolFile.exists() ? new SurfacePool(poolFile) : null);
+            list.add(new Benchmark("predictPrefix", LOOKUPS, () -> {
+                int n = 0;
+                for (String prefix : prefixes) {
+                    n += predictDic.predict(prefix).length;
+                }
+                return n;
+            }));
+        }
+        return byName(list);
+    }
+
+    // prefixで始まる読みを先頭からPREFIX_LIMIT件まで取り出す。値が消されないよう、件数に値のハッシュを混ぜて返す
+    static int prefixScan(BTree tree, String prefix) throws IOException {
+        TupleBrowser browser = tree.browse(prefix);
+        Tuple tuple = new Tuple();
+        int n = 0;
+        int hash = 0;
+        while (n < PREFIX_LIMIT && browser.getNext(tuple) && ((String) tuple.getKey()).startsWith(prefix)) {
+            hash += tuple.getValue().hashCode();
+            n++;
+        }
+        return 31 * hash + n;
+    }
+}
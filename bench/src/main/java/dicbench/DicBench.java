@@ -0,0 +1,202 @@
+package dicbench;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * 辞書の生成と検索でよく通る処理のJMHのベンチマーク。処理と入力はDicWorkloads。
+ *
+ * 主の結果は一回の呼び出しの秒あたりの回数。一回の呼び出しでまとめて処理する行や読みの数を
+ * itemsに数えるので、一行、一件あたりの秒あたりの操作数はitemsの結果を見る。
+ *
+ * cd bench && mvn -B package
+ * cd .. && java -cp bench/target/benchmarks.jar:lib/jdbm-1.0.jar org.openjdk.jmh.Main -rf json -rff bench-results.json
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DicBench {
+
+    // DicWorkloadsの処理の一つ。入力がなければ呼んだときに例外にする
+    static final class Task {
+        final String name;
+        final Callable<Object> body;
+        final int items;
+
+        Task(String name, Callable<Object> body) {
+            this.name = name;
+            this.body = body;
+            this.items = body == null ? 0 : ((IntSupplier) body).getAsInt();
+        }
+
+        Object run(Items counter) throws Exception {
+            if (body == null) {
+                throw new IllegalStateException(name + "の入力がない");
+            }
+            counter.items += items;
+            return body.call();
+        }
+    }
+
+    // DicWorkloadsのgroupの処理。DicWorkloadsは無名パッケージにあるので、ここからは名前で呼ぶ
+    @SuppressWarnings("unchecked")
+    static Map<String, Callable<Object>> load(String group, String... args) throws Exception {
+        Class<?>[] types = new Class<?>[args.length];
+        Arrays.fill(types, String.class);
+        Method method = Class.forName("DicWorkloads").getMethod(group, types);
+        try {
+            return (Map<String, Callable<Object>>) method.invoke(null, (Object[]) args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    // 一回の呼び出しで処理した行や読みの数。JMHが秒あたりの数にする
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Items {
+        public long items;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            items = 0;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Lex {
+        @Param("./data/small_lex.csv")
+        public String lex;
+
+        Task lexParse;
+        Task lexProcess;
+        Task lexExpand;
+        Task toWideHiragana;
+        Task unescape;
+        Task entrySort;
+
+        @Setup
+        public void setup() throws Exception {
+            Map<String, Callable<Object>> tasks = load("lex", lex);
+            lexParse = new Task("lexParse", tasks.get("lexParse"));
+            lexProcess = new Task("lexProcess", tasks.get("lexProcess"));
+            lexExpand = new Task("lexExpand", tasks.get("lexExpand"));
+            toWideHiragana = new Task("toWideHiragana", tasks.get("toWideHiragana"));
+            unescape = new Task("unescape", tasks.get("unescape"));
+            entrySort = new Task("entrySort", tasks.get("entrySort"));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Dump {
+        Task processYomiganaLine;
+        Task parseLine;
+
+        @Setup
+        public void setup() throws Exception {
+            Map<String, Callable<Object>> tasks = load("dump");
+            processYomiganaLine = new Task("processYomiganaLine", tasks.get("processYomiganaLine"));
+            parseLine = new Task("parseLine", tasks.get("parseLine"));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Lookup {
+        @Param("system_dic")
+        public String dic;
+
+        Task lookupRandom;
+        Task lookupPrefix;
+        Task lookupMiss;
+        Task predictPrefix;
+
+        @Setup
+        public void setup() throws Exception {
+            Map<String, Callable<Object>> tasks = load("lookup", dic);
+            lookupRandom = new Task("lookupRandom", tasks.get("lookupRandom"));
+            lookupPrefix = new Task("lookupPrefix", tasks.get("lookupPrefix"));
+            lookupMiss = new Task("lookupMiss", tasks.get("lookupMiss"));
+            predictPrefix = new Task("predictPrefix", tasks.get("predictPrefix"));
+        }
+    }
+
+    @Benchmark
+    public Object lexParse(Lex lex, Items items) throws Exception {
+        return lex.lexParse.run(items);
+    }
+
+    @Benchmark
+    public Object lexProcess(Lex lex, Items items) throws Exception {
+        return lex.lexProcess.run(items);
+    }
+
+    @Benchmark
+    public Object lexExpand(Lex lex, Items items) throws Exception {
+        return lex.lexExpand.run(items);
+    }
+
+    @Benchmark
+    public Object toWideHiragana(Lex lex, Items items) throws Exception {
+        return lex.toWideHiragana.run(items);
+    }
+
+    @Benchmark
+    public Object unescape(Lex lex, Items items) throws Exception {
+        return lex.unescape.run(items);
+    }
+
+    @Benchmark
+    public Object entrySort(Lex lex, Items items) throws Exception {
+        return lex.entrySort.run(items);
+    }
+
+    @Benchmark
+    public Object processYomiganaLine(Dump dump, Items items) throws Exception {
+        return dump.processYomiganaLine.run(items);
+    }
+
+    @Benchmark
+    public Object parseLine(Dump dump, Items items) throws Exception {
+        return dump.parseLine.run(items);
+    }
+
+    @Benchmark
+    public Object lookupRandom(Lookup lookup, Items items) throws Exception {
+        return lookup.lookupRandom.run(items);
+    }
+
+    @Benchmark
+    public Object lookupPrefix(Lookup lookup, Items items) throws Exception {
+        return lookup.lookupPrefix.run(items);
+    }
+
+    @Benchmark
+    public Object lookupMiss(Lookup lookup, Items items) throws Exception {
+        return lookup.lookupMiss.run(items);
+    }
+
+    @Benchmark
+    public Object predictPrefix(Lookup lookup, Items items) throws Exception {
+        return lookup.predictPrefix.run(items);
+    }
+}
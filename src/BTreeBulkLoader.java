@@ -0,0 +1,327 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import jdbm.RecordManager;
+import jdbm.btree.BTree;
+import jdbm.helper.Serializer;
+import jdbm.recman.CacheRecordManager;
+
+/*
+ * ソート済みのキーからjdbmのBTreeを葉の階層から順に一括で構築する。
+ *
+ * BTree.insertは一件ごとに根からたどってページを分割するが、キーが昇順に来る場合は
+ * 葉のページを満杯まで詰めて順に書き出し、その上の階層も同じように作ればよい。
+ * ページはjdbm.btree.BPageと同じ形式で書き出すので、BTree.loadでそのまま読み出せる。
+ */
+public class BTreeBulkLoader {
+
+    // BPageと同じ形式の1ページ。エントリはページの末尾に詰める
+    static class Page {
+        final boolean leaf;
+        final Object[] keys;
+        final Object[] values;
+        final long[] children;
+        int first;
+        long recid;
+        long previous;
+        long next;
+
+        Page(boolean leaf, int pageSize) {
+            this.leaf = leaf;
+            keys = new Object[pageSize];
+            values = leaf ? new Object[pageSize] : null;
+            children = leaf ? null : new long[pageSize];
+            first = pageSize;
+        }
+    }
+
+    // BPage.serialize、BPage.deserializeと同じ並びで読み書きする。シリアライザがなければキーと値は既定のシリアライズ
+    static class PageSerializer implements Serializer {
+        static final long serialVersionUID = 1L;
+        final int pageSize;
+        final Serializer keySerializer;
+        final Serializer valueSerializer;
+
+        PageSerializer(int pageSize, Serializer keySerializer, Serializer valueSerializer) {
+            this.pageSize = pageSize;
+            this.keySerializer = keySerializer;
+            this.valueSerializer = valueSerializer;
+        }
+
+        @Override
+        public byte[] serialize(Object obj) throws IOException {
+            Page page = (Page) obj;
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(baos);
+            oos.writeBoolean(page.leaf);
+            if (page.leaf) {
+                oos.writeLong(page.previous);
+                oos.writeLong(page.next);
+            }
+            oos.writeInt(page.first);
+            for (int i = page.first; i < page.keys.length; i++) {
+                writeObject(oos, keySerializer, page.keys[i]);
+            }
+            for (int i = page.first; i < page.keys.length; i++) {
+                if (page.leaf) {
+                    writeObject(oos, valueSerializer, page.values[i]);
+                } else {
+                    oos.writeLong(page.children[i]);
+                }
+            }
+            oos.close();
+            return baos.toByteArray();
+        }
+
+        // BPage.writeByteArrayと同じく、シリアライズしたものを長さ(nullなら-1)に続けて書く
+        static void writeObject(ObjectOutputStream oos, Serializer serializer, Object obj)
+                throws IOException {
+            if (serializer == null) {
+                oos.writeObject(obj);
+                return;
+            }
+            byte[] data = obj == null ? null : serializer.serialize(obj);
+            if (data == null) {
+                oos.writeInt(-1);
+            } else {
+                oos.writeInt(data.length);
+                oos.write(data);
+            }
+        }
+
+        @Override
+        public Object deserialize(byte[] serialized) throws IOException {
+            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(serialized));
+            boolean leaf = ois.readBoolean();
+            Page page = new Page(leaf, pageSize);
+            if (leaf) {
+                page.previous = ois.readLong();
+                page.next = ois.readLong();
+            }
+            page.first = ois.readInt();
+            for (int i = page.first; i < pageSize; i++) {
+                page.keys[i] = readObject(ois, keySerializer);
+            }
+            for (int i = page.first; i < pageSize; i++) {
+                if (leaf) {
+                    page.values[i] = readObject(ois, valueSerializer);
+                } else {
+                    page.children[i] = ois.readLong();
+                }
+            }
+            ois.close();
+            return page;
+        }
+
+        // BPage.readByteArrayと同じく、長さが-1ならnull
+        static Object readObject(ObjectInputStream ois, Serializer serializer) throws IOException {
+            if (serializer == null) {
+                try {
+                    return ois.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException(e);
+                }
+            }
+            int length = ois.readInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] data = new byte[length];
+            ois.readFully(data);
+            return serializer.deserialize(data);
+        }
+    }
+
+    // 階層ごとの書き出し待ちのエントリ。最大2ページ分を保持する
+    static class Level {
+        final Object[] keys;
+        final Object[] values;
+        final long[] children;
+        int count = 0;
+        int pagesWritten = 0;
+
+        Level(boolean leaf, int pageSize) {
+            keys = new Object[pageSize * 2];
+            values = leaf ? new Object[pageSize * 2] : null;
+            children = leaf ? null : new long[pageSize * 2];
+        }
+
+        // 先頭のn件を捨てて詰める
+        void shift(int n) {
+            count -= n;
+            System.arraycopy(keys, n, keys, 0, count);
+            if (values != null) {
+                System.arraycopy(values, n, values, 0, count);
+            } else {
+                System.arraycopy(children, n, children, 0, count);
+            }
+        }
+    }
+
+    final RecordManager recman;
+    // ページはキャッシュを通さずに書き出す。キャッシュに残るとBTreeがBPageとして読めない
+    final RecordManager pageRecman;
+    final BTree tree;
+    final Comparator<Object> comparator;
+    final int pageSize = BTree.DEFAULT_SIZE;
+    final PageSerializer serializer;
+    // levels.get(0)が葉
+    final List<Level> levels = new ArrayList<>();
+    Page previousLeaf = null;
+    Object lastKey = null;
+    int entries = 0;
+
+    BTreeBulkLoader(RecordManager recman, Comparator<?> comparator) throws IOException {
+        this(recman, comparator, null, null);
+    }
+
+    // BTree.createInstanceと同じく、シリアライザがnullなら既定のシリアライズ
+    @SuppressWarnings("unchecked")
+    BTreeBulkLoader(RecordManager recman, Comparator<?> comparator, Serializer keySerializer,
+            Serializer valueSerializer) throws IOException {
+        this.recman = recman;
+        if (recman instanceof CacheRecordManager) {
+            this.pageRecman = ((CacheRecordManager) recman).getRecordManager();
+        } else {
+            this.pageRecman = recman;
+        }
+        this.comparator = (Comparator<Object>) comparator;
+        this.serializer = new PageSerializer(pageSize, keySerializer, valueSerializer);
+        this.tree = BTree.createInstance(recman, comparator, keySerializer, valueSerializer);
+        levels.add(new Level(true, pageSize));
+    }
+
+    long getRecid() {
+        return tree.getRecid();
+    }
+
+    // キーは昇順に重複なく追加すること
+    void add(Object key, Object value) throws IOException {
+        if (lastKey != null && comparator.compare(lastKey, key) >= 0) {
+            throw new IllegalArgumentException("キーが昇順でない: " + key);
+        }
+        addLeafEntry(key, value);
+        lastKey = key;
+        entries++;
+    }
+
+    void addLeafEntry(Object key, Object value) throws IOException {
+        Level leaf = levels.get(0);
+        if (leaf.count == leaf.keys.length) {
+            writeLeaf(0, pageSize);
+            leaf.shift(pageSize);
+        }
+        leaf.keys[leaf.count] = key;
+        leaf.values[leaf.count] = value;
+        leaf.count++;
+    }
+
+    // 上の階層に子ページ(最大のキーとレコードID)を追加する
+    void addChild(int depth, Object largestKey, long recid) throws IOException {
+        if (levels.size() <= depth) {
+            levels.add(new Level(false, pageSize));
+        }
+        Level level = levels.get(depth);
+        if (level.count == level.keys.length) {
+            writeNode(depth, 0, pageSize);
+            level.shift(pageSize);
+        }
+        level.keys[level.count] = largestKey;
+        level.children[level.count] = recid;
+        level.count++;
+    }
+
+    void writeLeaf(int from, int count) throws IOException {
+        Level leaf = levels.get(0);
+        Page page = new Page(true, pageSize);
+        page.first = pageSize - count;
+        System.arraycopy(leaf.keys, from, page.keys, page.first, count);
+        System.arraycopy(leaf.values, from, page.values, page.first, count);
+        page.previous = previousLeaf == null ? 0 : previousLeaf.recid;
+        page.recid = pageRecman.insert(page, serializer);
+        // 前の葉の次ページを書き換える。大きさは変わらない
+        if (previousLeaf != null) {
+            previousLeaf.next = page.recid;
+            pageRecman.update(previousLeaf.recid, previousLeaf, serializer);
+        }
+        previousLeaf = page;
+        leaf.pagesWritten++;
+        addChild(1, page.keys[pageSize - 1], page.recid);
+    }
+
+    void writeNode(int depth, int from, int count) throws IOException {
+        Level level = levels.get(depth);
+        Page page = new Page(false, pageSize);
+        page.first = pageSize - count;
+        System.arraycopy(level.keys, from, page.keys, page.first, count);
+        System.arraycopy(level.children, from, page.children, page.first, count);
+        page.recid = pageRecman.insert(page, serializer);
+        level.pagesWritten++;
+        addChild(depth + 1, page.keys[pageSize - 1], page.recid);
+    }
+
+    // 階層の残りを書き出す。BPageは根以外のページに半分以上のエントリを要求するので、
+    // 1ページに収まらなければ2ページに均等に分ける
+    void flush(int depth) throws IOException {
+        Level level = levels.get(depth);
+        int count = level.count;
+        int second = count > pageSize ? count / 2 : 0;
+        int first = count - second;
+        if (depth == 0) {
+            writeLeaf(0, first);
+            if (second > 0) {
+                writeLeaf(first, second);
+            }
+        } else {
+            writeNode(depth, 0, first);
+            if (second > 0) {
+                writeNode(depth, first, second);
+            }
+        }
+        level.count = 0;
+    }
+
+    // 残りのページを書き出し、根と高さをBTreeに設定する
+    BTree finish() throws IOException {
+        if (entries == 0) {
+            return tree;
+        }
+        // BPageと同じく、一番右の葉の最後にnullのキーを置く。
+        // 上の階層ではこれが最大のキーになり、TupleBrowserはここで終わる
+        addLeafEntry(null, null);
+        flush(0);
+        int depth = 1;
+        while (true) {
+            Level level = levels.get(depth);
+            if (level.pagesWritten == 0 && level.count == 1) {
+                // この階層の唯一の子が根
+                setField("_root", level.children[0]);
+                setField("_height", depth);
+                setField("_entries", entries);
+                break;
+            }
+            flush(depth);
+            depth++;
+        }
+        recman.update(tree.getRecid(), tree);
+        return tree;
+    }
+
+    // BTreeには根と高さを外から設定する方法がない。jdbm-1.0のフィールド名に依存するので、
+    // BTreeBulkLoaderTestで読み戻せることを確かめる
+    void setField(String name, Object value) throws IOException {
+        try {
+            Field field = BTree.class.getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(tree, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("BTreeのフィールドを設定できない: " + name, e);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Properties;
+import jdbm.RecordManager;
+import jdbm.RecordManagerFactory;
+import jdbm.btree.BTree;
+
+/*
+ * BTreeDicWriterが書き出したsystem_dic.dbを引く。
+ *
+ * 値の形式は書き出したときのオプションに合わせてrankedとpoolを指定する。
+ * 表記の表を使う形式ではcandidatesやsurfaceIdsで表記のIDだけを取り出し、
+ * 表示する候補だけをsurfaceで表記に戻せる。
+ */
+public class BTreeDic implements Closeable {
+    final RecordManager recman;
+    final BTree tree;
+    final BTree overflow;
+    final boolean ranked;
+    final SurfacePool pool;
+
+    BTreeDic(String name, String btreeName, boolean ranked, SurfacePool pool) throws IOException {
+        // createRecordManagerはファイルがなければ空の辞書を作ってしまう
+        if (!new File(name + ".db").exists()) {
+            throw new FileNotFoundException("辞書がない: " + name + ".db");
+        }
+        recman = RecordManagerFactory.createRecordManager(name, new Properties());
+        long treeRecid = recman.getNamedObject(btreeName);
+        if (treeRecid == 0) {
+            recman.close();
+            throw new IOException("BTreeがない: " + name + " " + btreeName);
+        }
+        tree = BTree.load(recman, treeRecid);
+        long recid = recman.getNamedObject(btreeName + BTreeDicWriter.OVERFLOW_SUFFIX);
+        overflow = recid != 0 ? BTree.load(recman, recid) : null;
+        this.ranked = ranked;
+        this.pool = pool;
+    }
+
+    // rankedで書き出した辞書の候補。moreならoverflowCandidatesに続きがある。なければnull
+    CandidateCodec.Candidates candidates(String reading) throws IOException {
+        return decode(tree.find(reading));
+    }
+
+    CandidateCodec.Candidates overflowCandidates(String reading) throws IOException {
+        return overflow == null ? null : decode(overflow.find(reading));
+    }
+
+    CandidateCodec.Candidates decode(Object value) {
+        if (value == null) {
+            return null;
+        }
+        byte[] bytes = (byte[]) value;
+        return pool != null ? CandidateCodec.decodeIds(bytes) : CandidateCodec.decode(bytes);
+    }
+
+    // rankedでなく、表記の表を使う辞書の表記のID。なければnull
+    int[] surfaceIds(String reading) throws IOException {
+        Object value = tree.find(reading);
+        return value == null ? null : SurfacePool.decodeIds((byte[]) value);
+    }
+
+    String surface(int id) {
+        return pool.get(id);
+    }
+
+    // 全ての表記。なければnull
+    String[] surfaces(String reading) throws IOException {
+        if (ranked) {
+            CandidateCodec.Candidates c = candidates(reading);
+            if (c == null) {
+                return null;
+            }
+            CandidateCodec.Candidates rest = c.more ? overflowCandidates(reading) : null;
+            String[] surfaces = new String[c.size() + (rest == null ? 0 : rest.size())];
+            for (int i = 0; i < c.size(); i++) {
+                surfaces[i] = c.surface(i, pool);
+            }
+            for (int i = c.size(); i < surfaces.length; i++) {
+                surfaces[i] = rest.surface(i - c.size(), pool);
+            }
+            return surfaces;
+        }
+        if (pool != null) {
+            int[] ids = surfaceIds(reading);
+            if (ids == null) {
+                return null;
+            }
+            String[] surfaces = new String[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                surfaces[i] = pool.get(ids[i]);
+            }
+            return surfaces;
+        }
+        Object value = tree.find(reading);
+        return value == null ? null : ((String) value).split("\t");
+    }
+
+    @Override
+    public void close() throws IOException {
+        recman.close();
+    }
+}
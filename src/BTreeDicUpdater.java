@@ -0,0 +1,101 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import jdbm.RecordManager;
+import jdbm.RecordManagerFactory;
+import jdbm.btree.BTree;
+
+/*
+ * 前回のsystem_dic.txtと新しい候補を読みの順に突き合わせ、既存のsystem_dic.dbのBTreeに
+ * 違いだけを反映する。値はBTreeDicWriterの既定の形式(タブ区切りの表記)に限る。
+ *
+ * 新しい読みは追加、表記の並びが変わった読みは置き換え、なくなった読みは削除する。
+ * 読みはGenDicからもsystem_dic.txtからも昇順に渡されるので、両方を一度ずつ読めばよい。
+ */
+public class BTreeDicUpdater implements DicWriter {
+    // トランザクションが大きくなりすぎないよう、この件数ごとにコミットする
+    static final int COMMIT_INTERVAL = 10000;
+
+    final RecordManager recman;
+    final BTree tree;
+    final BufferedReader previous;
+    // 前回のsystem_dic.txtの読みと表記の部分。読み終えたらnull
+    String prevReading;
+    String prevSurfaces;
+    int pending = 0;
+    int added = 0;
+    int changed = 0;
+    int removed = 0;
+
+    BTreeDicUpdater(String name, String btreeName, File previousText) throws IOException {
+        recman = RecordManagerFactory.createRecordManager(name);
+        long recid = recman.getNamedObject(btreeName);
+        if (recid == 0) {
+            recman.close();
+            throw new IOException(btreeName + "がない: " + name + ".db");
+        }
+        tree = BTree.load(recman, recid);
+        previous = new BufferedReader(new InputStreamReader(
+                new FileInputStream(previousText), StandardCharsets.UTF_8));
+        readPrevious();
+    }
+
+    void readPrevious() throws IOException {
+        String line = previous.readLine();
+        if (line == null) {
+            prevReading = null;
+            prevSurfaces = null;
+            return;
+        }
+        int tab = line.indexOf('\t');
+        prevReading = tab < 0 ? line : line.substring(0, tab);
+        prevSurfaces = tab < 0 ? "" : line.substring(tab + 1);
+    }
+
+    // readingより前にある前回の読みは全てなくなった
+    void removeBefore(String reading) throws IOException {
+        while (prevReading != null && (reading == null || prevReading.compareTo(reading) < 0)) {
+            tree.remove(prevReading);
+            removed++;
+            modified();
+            readPrevious();
+        }
+    }
+
+    void modified() throws IOException {
+        if (++pending == COMMIT_INTERVAL) {
+            recman.commit();
+            pending = 0;
+        }
+    }
+
+    @Override
+    public void add(String reading, String[] surfaces, int[] costs) throws IOException {
+        removeBefore(reading);
+        String value = String.join("\t", surfaces);
+        if (reading.equals(prevReading)) {
+            boolean same = value.equals(prevSurfaces);
+            readPrevious();
+            if (same) {
+                return;
+            }
+            changed++;
+        } else {
+            added++;
+        }
+        tree.insert(reading, value, true);
+        modified();
+    }
+
+    @Override
+    public void close() throws IOException {
+        removeBefore(null);
+        previous.close();
+        recman.commit();
+        recman.close();
+        System.err.println("追加: " + added + ", 変更: " + changed + ", 削除: " + removed);
+    }
+}
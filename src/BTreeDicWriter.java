@@ -0,0 +1,132 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Properties;
+import jdbm.RecordManager;
+import jdbm.RecordManagerFactory;
+import jdbm.RecordManagerOptions;
+import jdbm.btree.BTree;
+import jdbm.helper.ByteArraySerializer;
+import jdbm.helper.Serializer;
+import jdbm.helper.StringComparator;
+
+/*
+ * system_dic.db: 読みをキー、タブ区切りの表記を値とするjdbmのBTree。
+ * bulkLoadならBTreeBulkLoaderで一括して構築する。
+ *
+ * rankedなら値はCandidateCodecで詰めたコスト付きの候補になる。topKが正なら先頭のtopK件だけを
+ * 残し、残りの候補は同じファイルのbtreeName + "_overflow"のBTreeに入れる。
+ * poolがあれば表記の代わりにSurfacePoolWriterの表記のIDを入れる。rankedでなければ値は
+ * SurfacePoolWriter.encodeIdsで詰めたIDの並び。
+ */
+public class BTreeDicWriter implements DicWriter {
+    static final String OVERFLOW_SUFFIX = "_overflow";
+
+    final RecordManager recman;
+    final boolean ranked;
+    final int topK;
+    final SurfacePoolWriter pool;
+    final Tree tree;
+    final Tree overflow;
+
+    // BTreeかBTreeBulkLoaderのどちらかに書き込む
+    static class Tree {
+        final BTree tree;
+        final BTreeBulkLoader loader;
+
+        Tree(RecordManager recman, String name, boolean bulkLoad, Serializer valueSerializer)
+                throws IOException {
+            if (bulkLoad) {
+                loader = new BTreeBulkLoader(recman, new StringComparator(), null, valueSerializer);
+                tree = null;
+                recman.setNamedObject(name, loader.getRecid());
+            } else {
+                tree = BTree.createInstance(recman, new StringComparator(), null, valueSerializer);
+                loader = null;
+                recman.setNamedObject(name, tree.getRecid());
+            }
+        }
+
+        void add(String key, Object value) throws IOException {
+            if (loader != null) {
+                loader.add(key, value);
+            } else {
+                tree.insert(key, value, true);
+            }
+        }
+
+        void finish() throws IOException {
+            if (loader != null) {
+                loader.finish();
+            }
+        }
+    }
+
+    BTreeDicWriter(String name, String btreeName, boolean bulkLoad) throws IOException {
+        this(name, btreeName, bulkLoad, false, 0, null);
+    }
+
+    BTreeDicWriter(String name, String btreeName, boolean bulkLoad, boolean ranked, int topK,
+            SurfacePoolWriter pool) throws IOException {
+        Files.deleteIfExists(Paths.get(name + ".db"));
+        Files.deleteIfExists(Paths.get(name + ".lg"));
+
+        Properties props = new Properties();
+        if (bulkLoad) {
+            props.setProperty(RecordManagerOptions.DISABLE_TRANSACTIONS, "true");
+        }
+        recman = RecordManagerFactory.createRecordManager(name, props);
+        this.ranked = ranked;
+        this.topK = topK;
+        this.pool = pool;
+        // byte[]の値は既定のシリアライズだと1件ごとに数十バイト増えるのでそのまま書く
+        Serializer valueSerializer = ranked || pool != null ? new ByteArraySerializer() : null;
+        tree = new Tree(recman, btreeName, bulkLoad, valueSerializer);
+        overflow = topK > 0
+                ? new Tree(recman, btreeName + OVERFLOW_SUFFIX, bulkLoad, valueSerializer)
+                : null;
+    }
+
+    @Override
+    public void add(String reading, String[] surfaces, int[] costs) throws IOException {
+        int[] ids = null;
+        if (pool != null) {
+            ids = new int[surfaces.length];
+            for (int i = 0; i < surfaces.length; i++) {
+                ids[i] = pool.id(surfaces[i]);
+            }
+        }
+        if (!ranked) {
+            if (ids != null) {
+                tree.add(reading, SurfacePoolWriter.encodeIds(ids, 0, ids.length));
+            } else {
+                tree.add(reading, String.join("\t", surfaces));
+            }
+            return;
+        }
+        int n = surfaces.length;
+        if (topK > 0 && n > topK) {
+            tree.add(reading, encode(surfaces, ids, costs, 0, topK, true));
+            overflow.add(reading, encode(surfaces, ids, costs, topK, n, false));
+        } else {
+            tree.add(reading, encode(surfaces, ids, costs, 0, n, false));
+        }
+    }
+
+    static byte[] encode(String[] surfaces, int[] ids, int[] costs, int from, int to, boolean more) {
+        if (ids != null) {
+            return CandidateCodec.encodeIds(ids, costs, from, to, more);
+        }
+        return CandidateCodec.encode(surfaces, costs, from, to, more);
+    }
+
+    @Override
+    public void close() throws IOException {
+        tree.finish();
+        if (overflow != null) {
+            overflow.finish();
+        }
+        recman.commit();
+        recman.close();
+    }
+}
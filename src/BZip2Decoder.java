@@ -0,0 +1,428 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+ * bzip2の展開。外部のライブラリを使わずにブロック単位で展開する。
+ *
+ * ブロックはマジックナンバー(0x314159265359)の直後から、ハフマン符号、MTF、BWT、
+ * 連長符号の順に戻す。ブロックは他のブロックに依存しないので、ブロックの開始位置さえ
+ * 分かれば別々のスレッドで展開できる。ランダム化されたブロック(0.9.5より前の形式)には対応しない。
+ */
+public class BZip2Decoder {
+    static final long BLOCK_MAGIC = 0x314159265359L;
+    static final long EOS_MAGIC = 0x177245385090L;
+    static final int MAGIC_BITS = 48;
+    static final int MAX_BLOCK_SIZE = 900000;
+    static final int MAX_GROUPS = 6;
+    static final int MAX_SELECTORS = 18002;
+    static final int MAX_CODE_LENGTH = 20;
+    static final int GROUP_SIZE = 50;
+    static final int RUNA = 0;
+    static final int RUNB = 1;
+
+    static final int[] CRC_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int c = i << 24;
+            for (int k = 0; k < 8; k++) {
+                c = (c & 0x80000000) != 0 ? (c << 1) ^ 0x04c11db7 : c << 1;
+            }
+            CRC_TABLE[i] = c;
+        }
+    }
+
+    // data[]のビット列を先頭から読む。上位ビットが先
+    static class BitReader {
+        final byte[] data;
+        int index;
+        final int limit;
+        long buffer;
+        int bufferBits;
+
+        // data[from, to)をfromの先頭からskipビット飛ばして読む
+        BitReader(byte[] data, int from, int to, int skip) {
+            this.data = data;
+            this.index = from;
+            this.limit = to;
+            if (skip > 0 && index < limit) {
+                buffer = data[index++] & (0xff >>> skip);
+                bufferBits = 8 - skip;
+            }
+        }
+
+        int readBits(int n) throws IOException {
+            while (bufferBits < n) {
+                if (index >= limit) {
+                    throw new IOException("bzip2: データが途中で終わっている");
+                }
+                buffer = (buffer << 8) | (data[index++] & 0xff);
+                bufferBits += 8;
+            }
+            bufferBits -= n;
+            return (int) (buffer >>> bufferBits) & (n == 32 ? -1 : (1 << n) - 1);
+        }
+
+        boolean readBit() throws IOException {
+            return readBits(1) != 0;
+        }
+
+        long readLong48() throws IOException {
+            return ((long) readBits(24) << 24) | readBits(24);
+        }
+
+        // バイト境界まで読み飛ばす
+        void align() {
+            bufferBits -= bufferBits % 8;
+        }
+
+        boolean hasMoreBytes() {
+            return bufferBits >= 8 || index < limit;
+        }
+
+        // dataの先頭からのビット位置
+        long position() {
+            return index * 8L - bufferBits;
+        }
+    }
+
+    // ハフマン符号の表。bzip2の実装と同じく符号長ごとの上限値と基準値で引く
+    static class HuffmanTable {
+        final int[] limit = new int[MAX_CODE_LENGTH + 2];
+        final int[] base = new int[MAX_CODE_LENGTH + 2];
+        final int[] perm;
+        final int minLength;
+        final int maxLength;
+
+        HuffmanTable(int[] lengths, int alphaSize) {
+            int min = MAX_CODE_LENGTH;
+            int max = 0;
+            for (int i = 0; i < alphaSize; i++) {
+                min = Math.min(min, lengths[i]);
+                max = Math.max(max, lengths[i]);
+            }
+            minLength = min;
+            maxLength = max;
+            perm = new int[alphaSize];
+            int pp = 0;
+            for (int len = min; len <= max; len++) {
+                for (int i = 0; i < alphaSize; i++) {
+                    if (lengths[i] == len) {
+                        perm[pp++] = i;
+                    }
+                }
+            }
+            // base[len]はlenより短い符号の数
+            for (int i = 0; i < alphaSize; i++) {
+                base[lengths[i] + 1]++;
+            }
+            for (int i = 1; i < base.length; i++) {
+                base[i] += base[i - 1];
+            }
+            int vec = 0;
+            for (int len = min; len <= max; len++) {
+                vec += base[len + 1] - base[len];
+                limit[len] = vec - 1;
+                vec <<= 1;
+            }
+            for (int len = min + 1; len <= max; len++) {
+                base[len] = ((limit[len - 1] + 1) << 1) - base[len];
+            }
+        }
+
+        int decode(BitReader in) throws IOException {
+            int length = minLength;
+            int code = in.readBits(length);
+            while (code > limit[length]) {
+                if (++length > maxLength) {
+                    throw new IOException("bzip2: ハフマン符号が不正");
+                }
+                code = (code << 1) | in.readBits(1);
+            }
+            int index = code - base[length];
+            if (index < 0 || index >= perm.length) {
+                throw new IOException("bzip2: ハフマン符号が不正");
+            }
+            return perm[index];
+        }
+    }
+
+    // 展開したバイト列とCRC
+    static class Output extends ByteArrayOutputStream {
+        int crc = 0xffffffff;
+
+        Output(int size) {
+            super(size);
+        }
+
+        void put(int b) {
+            if (count == buf.length) {
+                ensureCapacity(count + 1);
+            }
+            buf[count++] = (byte) b;
+            crc = (crc << 8) ^ CRC_TABLE[((crc >>> 24) ^ b) & 0xff];
+        }
+
+        void ensureCapacity(int capacity) {
+            if (capacity > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(capacity, buf.length * 2));
+            }
+        }
+    }
+
+    /*
+     * ブロックのマジックナンバーの直後からブロックを一つ展開してoutに加える。
+     * 戻り値はブロックに記録されたCRC。
+     */
+    static int decodeBlock(BitReader in, Output out) throws IOException {
+        int storedCrc = in.readBits(32);
+        if (in.readBit()) {
+            throw new IOException("bzip2: ランダム化されたブロックには対応していない");
+        }
+        int origPtr = in.readBits(24);
+
+        // 使われているバイト
+        int[] seqToUnseq = new int[256];
+        int inUseCount = 0;
+        int used16 = in.readBits(16);
+        for (int i = 0; i < 16; i++) {
+            if ((used16 & (0x8000 >>> i)) != 0) {
+                int bits = in.readBits(16);
+                for (int j = 0; j < 16; j++) {
+                    if ((bits & (0x8000 >>> j)) != 0) {
+                        seqToUnseq[inUseCount++] = i * 16 + j;
+                    }
+                }
+            }
+        }
+        if (inUseCount == 0) {
+            throw new IOException("bzip2: 使われているバイトがない");
+        }
+        int alphaSize = inUseCount + 2;
+
+        // 50シンボルごとに使う表の番号
+        int groupCount = in.readBits(3);
+        int selectorCount = in.readBits(15);
+        if (groupCount < 2 || groupCount > MAX_GROUPS || selectorCount < 1) {
+            throw new IOException("bzip2: 表の数が不正");
+        }
+        byte[] selectors = new byte[Math.min(selectorCount, MAX_SELECTORS)];
+        byte[] groupMtf = new byte[MAX_GROUPS];
+        for (int i = 0; i < groupCount; i++) {
+            groupMtf[i] = (byte) i;
+        }
+        for (int i = 0; i < selectorCount; i++) {
+            int j = 0;
+            while (in.readBit()) {
+                if (++j >= groupCount) {
+                    throw new IOException("bzip2: 表の番号が不正");
+                }
+            }
+            byte v = groupMtf[j];
+            System.arraycopy(groupMtf, 0, groupMtf, 1, j);
+            groupMtf[0] = v;
+            if (i < selectors.length) {
+                selectors[i] = v;
+            }
+        }
+        selectorCount = selectors.length;
+
+        // 符号長は前のシンボルとの差分で記録されている
+        HuffmanTable[] tables = new HuffmanTable[groupCount];
+        int[] lengths = new int[alphaSize];
+        for (int t = 0; t < groupCount; t++) {
+            int length = in.readBits(5);
+            for (int i = 0; i < alphaSize; i++) {
+                while (true) {
+                    if (length < 1 || length > MAX_CODE_LENGTH) {
+                        throw new IOException("bzip2: 符号長が不正");
+                    }
+                    if (!in.readBit()) {
+                        break;
+                    }
+                    length += in.readBit() ? -1 : 1;
+                }
+                lengths[i] = length;
+            }
+            tables[t] = new HuffmanTable(lengths, alphaSize);
+        }
+
+        // ハフマン符号、RUNA/RUNBの連長符号、MTFを戻す
+        int endOfBlock = inUseCount + 1;
+        int[] counts = new int[256];
+        int[] tt = new int[MAX_BLOCK_SIZE];
+        int size = 0;
+        byte[] mtf = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            mtf[i] = (byte) i;
+        }
+        int selectorIndex = 0;
+        int groupRemaining = 0;
+        HuffmanTable table = null;
+        int runLength = 0;
+        int runWeight = 1;
+        while (true) {
+            if (groupRemaining == 0) {
+                if (selectorIndex >= selectorCount) {
+                    throw new IOException("bzip2: 表の番号が足りない");
+                }
+                table = tables[selectors[selectorIndex++]];
+                groupRemaining = GROUP_SIZE;
+            }
+            groupRemaining--;
+            int sym = table.decode(in);
+            if (sym == RUNA || sym == RUNB) {
+                runLength += sym == RUNA ? runWeight : runWeight << 1;
+                runWeight <<= 1;
+                if (runLength > MAX_BLOCK_SIZE) {
+                    throw new IOException("bzip2: 連長が不正");
+                }
+                continue;
+            }
+            if (runLength > 0) {
+                if (size + runLength > MAX_BLOCK_SIZE) {
+                    throw new IOException("bzip2: ブロックが大きすぎる");
+                }
+                int b = seqToUnseq[mtf[0] & 0xff];
+                counts[b] += runLength;
+                Arrays.fill(tt, size, size + runLength, b);
+                size += runLength;
+                runLength = 0;
+                runWeight = 1;
+            }
+            if (sym == endOfBlock) {
+                break;
+            }
+            if (size >= MAX_BLOCK_SIZE) {
+                throw new IOException("bzip2: ブロックが大きすぎる");
+            }
+            int j = sym - 1;
+            byte v = mtf[j];
+            System.arraycopy(mtf, 0, mtf, 1, j);
+            mtf[0] = v;
+            int b = seqToUnseq[v & 0xff];
+            counts[b]++;
+            tt[size++] = b;
+        }
+        if (origPtr >= size) {
+            throw new IOException("bzip2: 開始位置が不正");
+        }
+
+        // BWTを戻す。ttの上位24ビットに次の位置を入れる
+        int[] cftab = new int[256];
+        for (int i = 1; i < 256; i++) {
+            cftab[i] = cftab[i - 1] + counts[i - 1];
+        }
+        for (int i = 0; i < size; i++) {
+            int b = tt[i] & 0xff;
+            tt[cftab[b]++] |= i << 8;
+        }
+
+        // 4つ続いた同じバイトの後ろの1バイトは繰り返しの回数
+        out.crc = 0xffffffff;
+        out.ensureCapacity(out.size() + size);
+        int pos = tt[origPtr] >>> 8;
+        int last = -1;
+        int run = 0;
+        for (int i = 0; i < size; i++) {
+            pos = tt[pos];
+            int b = pos & 0xff;
+            pos >>>= 8;
+            if (run == 4) {
+                for (int k = 0; k < b; k++) {
+                    out.put(last);
+                }
+                run = 0;
+                continue;
+            }
+            if (b == last) {
+                run++;
+            } else {
+                last = b;
+                run = 1;
+            }
+            out.put(b);
+        }
+        int crc = ~out.crc;
+        if (crc != storedCrc) {
+            throw new IOException("bzip2: ブロックのCRCが一致しない");
+        }
+        return storedCrc;
+    }
+
+    // ブロック一つを展開する。dataはマジックナンバーの直後のビットから始まる
+    static byte[] decodeBlock(byte[] data, int skip) throws IOException {
+        Output out = new Output(MAX_BLOCK_SIZE);
+        decodeBlock(new BitReader(data, 0, data.length, skip), out);
+        return out.toByteArray();
+    }
+
+    /*
+     * マジックナンバーの直後からendビットまでにあるブロックを全て展開する。dataはマジックナンバーの
+     * 直後のビットから始まる。偶然のマジックナンバーでつなげ直した範囲には、次のブロックのマジックナンバーや
+     * ストリームの終端と次のストリームのヘッダが続くことがあるので、それらを読み飛ばして最後まで展開する。
+     * ストリームの途中から読むので、ストリームのCRCは確かめない。
+     */
+    static byte[] decodeBlocks(byte[] data, int skip, long end) throws IOException {
+        BitReader in = new BitReader(data, 0, data.length, skip);
+        Output out = new Output(MAX_BLOCK_SIZE);
+        decodeBlock(in, out);
+        while (in.position() + MAGIC_BITS <= end) {
+            long magic = in.readLong48();
+            if (magic == BLOCK_MAGIC) {
+                decodeBlock(in, out);
+            } else if (magic == EOS_MAGIC) {
+                in.readBits(32);
+                in.align();
+                // 続くストリームのヘッダとブロックのマジックナンバー
+                if (in.position() + 32 + MAGIC_BITS > end) {
+                    break;
+                }
+                if (in.readBits(8) != 'B' || in.readBits(8) != 'Z' || in.readBits(8) != 'h') {
+                    throw new IOException("bzip2: ヘッダが不正");
+                }
+                in.readBits(8);
+            } else {
+                throw new IOException("bzip2: ブロックのマジックナンバーが不正");
+            }
+        }
+        // ブロックは次のマジックナンバーの直前で終わるので、残るのは終端の後の詰め物だけ
+        if (end - in.position() >= 8) {
+            throw new IOException("bzip2: 範囲を最後まで展開できなかった");
+        }
+        return out.toByteArray();
+    }
+
+    // ストリーム(BZh9から終端まで)を展開する。連結された複数のストリームも順に展開する
+    static byte[] decodeStreams(byte[] data) throws IOException {
+        BitReader in = new BitReader(data, 0, data.length, 0);
+        Output out = new Output(MAX_BLOCK_SIZE);
+        do {
+            if (in.readBits(8) != 'B' || in.readBits(8) != 'Z' || in.readBits(8) != 'h') {
+                throw new IOException("bzip2: ヘッダが不正");
+            }
+            int level = in.readBits(8) - '0';
+            if (level < 1 || level > 9) {
+                throw new IOException("bzip2: ブロックサイズが不正");
+            }
+            int combinedCrc = 0;
+            while (true) {
+                long magic = in.readLong48();
+                if (magic == BLOCK_MAGIC) {
+                    int crc = decodeBlock(in, out);
+                    combinedCrc = ((combinedCrc << 1) | (combinedCrc >>> 31)) ^ crc;
+                } else if (magic == EOS_MAGIC) {
+                    if (in.readBits(32) != combinedCrc) {
+                        throw new IOException("bzip2: ストリームのCRCが一致しない");
+                    }
+                    in.align();
+                    break;
+                } else {
+                    throw new IOException("bzip2: ブロックのマジックナンバーが不正");
+                }
+            }
+        } while (in.hasMoreBytes());
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,315 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * bzip2のファイルを複数のスレッドで展開し、元の順に読む。
+ *
+ * 通常のファイルはブロックのマジックナンバーをビット単位で探してブロックに分ける。
+ * マジックナンバーと同じビット列が圧縮データの中に偶然現れた場合はブロックの展開に失敗するので、
+ * 次の範囲とつなげ、含まれるブロックを順に全て展開し直す。
+ * multistream版のファイルは索引に書かれたバイト位置で独立したストリームに分ける。
+ * 展開は先読みしてthreads * 2個まで並行に進める。
+ */
+public class BZip2InputStream extends InputStream {
+    // 偶然のマジックナンバーでつなげ直す範囲の数の上限
+    static final int MAX_MERGE = 8;
+
+    // ファイルの範囲。blockならマジックナンバー直後からのビット位置、そうでなければストリームのバイト位置
+    class Range {
+        final long start;
+        final long end;
+        final boolean block;
+        Future<byte[]> result;
+
+        Range(long start, long end, boolean block) {
+            this.start = start;
+            this.end = end;
+            this.block = block;
+        }
+
+        byte[] decode() throws IOException {
+            if (block) {
+                byte[] data = readFile(start >>> 3, (end + 7) >>> 3);
+                return BZip2Decoder.decodeBlock(data, (int) (start & 7));
+            }
+            return BZip2Decoder.decodeStreams(readFile(start, end));
+        }
+
+        // つなげ直した範囲。複数のブロックを含むことがあるので、最後まで順に展開する
+        byte[] decodeAll() throws IOException {
+            byte[] data = readFile(start >>> 3, (end + 7) >>> 3);
+            return BZip2Decoder.decodeBlocks(data, (int) (start & 7), end - (start & ~7L));
+        }
+    }
+
+    final FileChannel channel;
+    final ExecutorService pool;
+    final int window;
+    final Deque<Range> pending = new ArrayDeque<>();
+    // ブロックを探す位置。multistreamならnull
+    final BlockScanner scanner;
+    // multistreamのストリームの開始位置
+    final long[] offsets;
+    int nextOffset = 0;
+    byte[] current = new byte[0];
+    int pos = 0;
+
+    // 通常のbzip2ファイル
+    BZip2InputStream(File file, int threads) throws IOException {
+        this(file, threads, null);
+    }
+
+    // offsetsはストリームの開始位置。nullならブロックを探して分ける
+    BZip2InputStream(File file, int threads, long[] offsets) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        pool = Executors.newFixedThreadPool(threads);
+        window = threads * 2;
+        this.offsets = offsets;
+        scanner = offsets == null ? new BlockScanner(file) : null;
+    }
+
+    // multistream版のファイルを索引のストリーム位置で分けて読む
+    static BZip2InputStream openMultistream(File file, File index, int threads) throws IOException {
+        return new BZip2InputStream(file, threads, readOffsets(file, index, threads));
+    }
+
+    /*
+     * 索引(offset:pageid:titleの行)からストリームの開始位置を重複なく取り出す。
+     * 先頭のsiteinfoのストリームと末尾までを含むように0とファイルの長さを加える。
+     */
+    static long[] readOffsets(File file, File index, int threads) throws IOException {
+        TreeSet<Long> set = new TreeSet<>();
+        set.add(0L);
+        set.add(file.length());
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                new BZip2InputStream(index, threads), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                int colon = line.indexOf(':');
+                if (colon > 0) {
+                    set.add(Long.parseLong(line.substring(0, colon)));
+                }
+            }
+        }
+        long[] offsets = new long[set.size()];
+        int i = 0;
+        for (long offset : set) {
+            offsets[i++] = offset;
+        }
+        return offsets;
+    }
+
+    byte[] readFile(long from, long to) throws IOException {
+        to = Math.min(to, channel.size());
+        byte[] data = new byte[(int) (to - from)];
+        ByteBuffer bb = ByteBuffer.wrap(data);
+        while (bb.hasRemaining()) {
+            if (channel.read(bb, from + bb.position()) < 0) {
+                break;
+            }
+        }
+        return data;
+    }
+
+    // 次の範囲。なければnull
+    Range nextRange() throws IOException {
+        if (scanner != null) {
+            long[] bits = scanner.nextBlock();
+            return bits == null ? null : new Range(bits[0], bits[1], true);
+        }
+        if (nextOffset + 1 >= offsets.length) {
+            return null;
+        }
+        nextOffset++;
+        return new Range(offsets[nextOffset - 1], offsets[nextOffset], false);
+    }
+
+    // 先読みの範囲をwindow個まで投入する
+    void fill() throws IOException {
+        while (pending.size() < window) {
+            Range range = nextRange();
+            if (range == null) {
+                return;
+            }
+            range.result = pool.submit(range::decode);
+            pending.add(range);
+        }
+    }
+
+    static byte[] get(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    // 先頭の範囲を展開した結果。なければnull
+    byte[] nextBytes() throws IOException {
+        fill();
+        Range range = pending.poll();
+        if (range == null) {
+            return null;
+        }
+        try {
+            return get(range.result);
+        } catch (IOException e) {
+            if (!range.block) {
+                throw e;
+            }
+            /*
+             * 途中の偶然のマジックナンバーで切れていれば、後ろの範囲とつなげると展開できる。
+             * 偶然のものが終端のマジックナンバーなら、次の範囲は次の本当のブロックから始まるので、
+             * つなげた範囲には複数のブロックが入る。最後の範囲ならファイルの末尾までつなげる。
+             */
+            for (int i = 0; i < MAX_MERGE; i++) {
+                fill();
+                Range next = pending.poll();
+                long end = scanner.fileBits;
+                if (next != null) {
+                    next.result.cancel(true);
+                    end = next.end;
+                }
+                range = new Range(range.start, end, true);
+                try {
+                    return range.decodeAll();
+                } catch (IOException retry) {
+                    if (next == null) {
+                        break;
+                    }
+                    // さらに次の範囲とつなげる
+                }
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (pos == current.length) {
+            byte[] next = nextBytes();
+            if (next == null) {
+                return -1;
+            }
+            current = next;
+            pos = 0;
+        }
+        int n = Math.min(len, current.length - pos);
+        System.arraycopy(current, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        pool.shutdownNow();
+        if (scanner != null) {
+            scanner.close();
+        }
+        channel.close();
+    }
+
+    /*
+     * ファイルを先頭から読み、ブロックのマジックナンバーと終端のマジックナンバーをビット単位で探す。
+     * ブロックはブロックのマジックナンバーの直後から次のどちらかのマジックナンバーの手前まで。
+     */
+    static class BlockScanner {
+        static final long MASK = (1L << BZip2Decoder.MAGIC_BITS) - 1;
+        final InputStream in;
+        final long fileBits;
+        final byte[] buf = new byte[1 << 16];
+        int bufPos = 0;
+        int bufLimit = 0;
+        long bytesRead = 0;
+        long bits = 0;
+        // 同じバイトの中でまだ調べていないずらし量
+        int nextShift = -1;
+        // 開いているブロックの開始ビット位置。なければ-1
+        long openStart = -1;
+
+        BlockScanner(File file) throws IOException {
+            in = new FileInputStream(file);
+            fileBits = file.length() * 8;
+        }
+
+        // {開始ビット位置, 終了ビット位置}。なければnull
+        long[] nextBlock() throws IOException {
+            while (true) {
+                long[] magic = nextMagic();
+                if (openStart >= 0) {
+                    long[] block = { openStart, magic == null ? fileBits : magic[0] };
+                    openStart = magic != null && magic[1] == BZip2Decoder.BLOCK_MAGIC
+                            ? magic[0] + BZip2Decoder.MAGIC_BITS : -1;
+                    return block;
+                }
+                if (magic == null) {
+                    return null;
+                }
+                if (magic[1] == BZip2Decoder.BLOCK_MAGIC) {
+                    openStart = magic[0] + BZip2Decoder.MAGIC_BITS;
+                }
+            }
+        }
+
+        // {開始ビット位置, マジックナンバー}。なければnull
+        long[] nextMagic() throws IOException {
+            while (true) {
+                // 直近に読んだバイトの中の各ビット位置で終わる48ビットを、前の位置から順に調べる
+                while (nextShift >= 0) {
+                    int shift = nextShift--;
+                    if (bytesRead * 8 - shift < BZip2Decoder.MAGIC_BITS) {
+                        continue;
+                    }
+                    long v = (bits >>> shift) & MASK;
+                    if (v == BZip2Decoder.BLOCK_MAGIC || v == BZip2Decoder.EOS_MAGIC) {
+                        return new long[] { bytesRead * 8 - shift - BZip2Decoder.MAGIC_BITS, v };
+                    }
+                }
+                if (bufPos == bufLimit) {
+                    bufLimit = in.read(buf);
+                    bufPos = 0;
+                    if (bufLimit <= 0) {
+                        bufLimit = 0;
+                        return null;
+                    }
+                }
+                bits = (bits << 8) | (buf[bufPos++] & 0xff);
+                bytesRead++;
+                nextShift = 7;
+            }
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/*
+ * 実行の計測結果をJSONで書き出す。辞書の版ごとに比べて遅くなった処理を見つけるのに使う。
+ *
+ * 段階ごとの経過時間とCPU時間(全スレッドの合計)、件数のカウンタ、ヒープの最大使用量とGCの時間を記録する。
+ * カウンタは並列に処理するスレッドから増やしてよい。行ごとに数える件数は、処理する側で配列などに数えて
+ * 段階の終わりにaddでまとめること。
+ *
+ * ヒープの最大使用量は、GCの直前と段階の区切りで測ったヒープ全体の使用量の最大。メモリプールごとの
+ * 最大は別々の時点のものなので、足すと実際より大きくなる。
+ *
+ * 形式
+ *   {"tool": ..., "wallMs": ..., "cpuMs": ..., "peakHeapBytes": ..., "gcMs": ..., "gcCount": ...,
+ *    "stages": {段階: {"wallMs": ..., "cpuMs": ..., 件数: ..., 件数 + "PerSec": ...}},
+ *    "counters": {名前: 件数}}
+ */
+public class BuildMetrics {
+
+    static class Stage {
+        long wallNanos;
+        long cpuNanos;
+        // 段階で処理した件数。秒あたりの件数も書き出す
+        final Map<String, Long> counts = new LinkedHashMap<>();
+    }
+
+    final String tool;
+    final long startWall;
+    final long startCpu;
+    final Map<String, Stage> stages = new LinkedHashMap<>();
+    final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    final AtomicLong peakHeap = new AtomicLong();
+    String current;
+    long currentWall;
+    long currentCpu;
+
+    BuildMetrics(String tool) {
+        this.tool = tool;
+        watchGc();
+        sampleHeap();
+        startWall = System.nanoTime();
+        startCpu = cpuNanos();
+    }
+
+    // GCのたびに、GCの直前のヒープの使用量でpeakHeapを更新する
+    void watchGc() {
+        Set<String> heapPools = new HashSet<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool.getName());
+            }
+        }
+        NotificationListener listener = (notification, handback) -> {
+            if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                return;
+            }
+            GarbageCollectionNotificationInfo info =
+                    GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+            long used = 0;
+            for (Map.Entry<String, MemoryUsage> pool : info.getGcInfo().getMemoryUsageBeforeGc().entrySet()) {
+                if (heapPools.contains(pool.getKey())) {
+                    used += pool.getValue().getUsed();
+                }
+            }
+            peakHeap.accumulateAndGet(used, Math::max);
+        };
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter) {
+                ((NotificationEmitter) gc).addNotificationListener(listener, null, null);
+            }
+        }
+    }
+
+    void sampleHeap() {
+        peakHeap.accumulateAndGet(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed(), Math::max);
+    }
+
+    // プロセス全体のCPU時間。取れなければ0
+    static long cpuNanos() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return 0;
+    }
+
+    // 前の段階を終えてnameの段階を始める
+    void stage(String name) {
+        end();
+        sampleHeap();
+        current = name;
+        currentWall = System.nanoTime();
+        currentCpu = cpuNanos();
+    }
+
+    // 今の段階を終える
+    void end() {
+        if (current == null) {
+            return;
+        }
+        sampleHeap();
+        Stage stage = stages.computeIfAbsent(current, k -> new Stage());
+        stage.wallNanos += System.nanoTime() - currentWall;
+        stage.cpuNanos += cpuNanos() - currentCpu;
+        current = null;
+    }
+
+    // 段階nameで処理した件数
+    void count(String name, String unit, long n) {
+        stages.computeIfAbsent(name, k -> new Stage()).counts.merge(unit, n, Long::sum);
+    }
+
+    void add(String name, long n) {
+        counters.computeIfAbsent(name, k -> new LongAdder()).add(n);
+    }
+
+    // handlerに渡した行の数をカウンタnameに数える
+    DumpScanner.LineHandler countLines(String name, DumpScanner.LineHandler handler) {
+        LongAdder lines = counters.computeIfAbsent(name, k -> new LongAdder());
+        return (line, out) -> {
+            lines.increment();
+            handler.handle(line, out);
+        };
+    }
+
+    long counter(String name) {
+        LongAdder adder = counters.get(name);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    long peakHeapBytes() {
+        sampleHeap();
+        return peakHeap.get();
+    }
+
+    void write(File file) throws IOException {
+        end();
+        long gcMs = 0;
+        long gcCount = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcMs += Math.max(gc.getCollectionTime(), 0);
+            gcCount += Math.max(gc.getCollectionCount(), 0);
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"tool\": ").append(quote(tool)).append(",\n");
+        sb.append("  \"wallMs\": ").append((System.nanoTime() - startWall) / 1000000).append(",\n");
+        sb.append("  \"cpuMs\": ").append((cpuNanos() - startCpu) / 1000000).append(",\n");
+        sb.append("  \"peakHeapBytes\": ").append(peakHeapBytes()).append(",\n");
+        sb.append("  \"gcMs\": ").append(gcMs).append(",\n");
+        sb.append("  \"gcCount\": ").append(gcCount).append(",\n");
+        sb.append("  \"stages\": {");
+        String sep = "\n";
+        for (Map.Entry<String, Stage> entry : stages.entrySet()) {
+            Stage stage = entry.getValue();
+            sb.append(sep).append("    ").append(quote(entry.getKey())).append(": {");
+            sb.append("\"wallMs\": ").append(stage.wallNanos / 1000000);
+            sb.append(", \"cpuMs\": ").append(stage.cpuNanos / 1000000);
+            for (Map.Entry<String, Long> count : stage.counts.entrySet()) {
+                sb.append(", ").append(quote(count.getKey())).append(": ").append(count.getValue());
+                long perSec = stage.wallNanos > 0 ? count.getValue() * 1000000000L / stage.wallNanos : 0;
+                sb.append(", ").append(quote(count.getKey() + "PerSec")).append(": ").append(perSec);
+            }
+            sb.append("}");
+            sep = ",\n";
+        }
+        sb.append("\n  },\n");
+        sb.append("  \"counters\": {");
+        sep = "\n";
+        // 比べやすいよう名前の順にする
+        for (String name : new TreeSet<>(counters.keySet())) {
+            sb.append(sep).append("    ").append(quote(name)).append(": ").append(counters.get(name).sum());
+            sep = ",\n";
+        }
+        sb.append("\n  }\n");
+        sb.append("}\n");
+        BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        bw.write(sb.toString());
+        bw.close();
+    }
+
+    static String quote(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch == '"' || ch == '\\') {
+                sb.append('\\').append(ch);
+            } else if (ch < 0x20) {
+                sb.append(String.format("\\u%04x", (int) ch));
+            } else {
+                sb.append(ch);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,72 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * 複数の文字列のUTF-8のバイト列をまとめて探す(Set Horspool)。
+ *
+ * 一番短いパターンの長さmを窓にし、窓の末尾のバイトでずらす量を決める。
+ * ずらす量はどのパターンの先頭m文字に対しても一致を飛ばさない最小の値にしておく。
+ * UTF-8は文字の途中から一致することがないので、バイト列で見つかった位置は文字列でも一致する。
+ */
+public class BytePatterns {
+    final String[] strings;
+    final byte[][] patterns;
+    final int m;
+    final int[] shift = new int[256];
+
+    BytePatterns(String... strings) {
+        this.strings = strings;
+        patterns = new byte[strings.length][];
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < strings.length; i++) {
+            patterns[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+            min = Math.min(min, patterns[i].length);
+        }
+        m = min;
+        for (int b = 0; b < shift.length; b++) {
+            shift[b] = m;
+        }
+        for (byte[] p : patterns) {
+            for (int j = 0; j < m - 1; j++) {
+                shift[p[j] & 0xff] = Math.min(shift[p[j] & 0xff], m - 1 - j);
+            }
+        }
+    }
+
+    // buf[from, to)でどれかのパターンが最初に現れる位置。なければ-1
+    int indexOf(ByteBuffer buf, int from, int to) {
+        int i = from;
+        while (i + m <= to) {
+            for (byte[] p : patterns) {
+                if (matchesAt(buf, i, to, p)) {
+                    return i;
+                }
+            }
+            i += shift[buf.get(i + m - 1) & 0xff];
+        }
+        return -1;
+    }
+
+    static boolean matchesAt(ByteBuffer buf, int i, int to, byte[] p) {
+        if (i + p.length > to) {
+            return false;
+        }
+        // 先頭は'や{のように他の文字にも現れやすいので後ろから比べる
+        for (int j = p.length - 1; j >= 0; j--) {
+            if (buf.get(i + j) != p[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // デコード済みの行にどれかが含まれるか
+    boolean foundIn(String line) {
+        for (String s : strings) {
+            if (line.contains(s)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
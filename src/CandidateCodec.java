@@ -0,0 +1,112 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/*
+ * 読みの候補(表記とコスト)をBTreeの値として詰めたbyte[]にする。
+ *
+ * 形式: 可変長整数で(候補数 << 1 | 続きがあれば1)、候補ごとに
+ * コストの前の候補との差(ZigZag)、表記の文字数、表記の文字。整数と文字はCompactCodecの形式。
+ * 候補はコストの小さい順なので差はほとんど小さな正の数になる。
+ * 表記の表(SurfacePool)を使う場合は、表記の文字数と文字の代わりに表記のIDを書く。
+ */
+public class CandidateCodec {
+
+    // 復元した候補。moreなら残りの候補が別に保存されている。
+    // 表記のIDで詰めた場合はsurfacesがnullで、idsに表記のIDが入る
+    static class Candidates {
+        final String[] surfaces;
+        final int[] ids;
+        final int[] costs;
+        final boolean more;
+
+        Candidates(String[] surfaces, int[] ids, int[] costs, boolean more) {
+            this.surfaces = surfaces;
+            this.ids = ids;
+            this.costs = costs;
+            this.more = more;
+        }
+
+        int size() {
+            return costs.length;
+        }
+
+        String surface(int i, SurfacePool pool) {
+            return surfaces != null ? surfaces[i] : pool.get(ids[i]);
+        }
+    }
+
+    // surfaces[from, to)を詰める
+    static byte[] encode(String[] surfaces, int[] costs, int from, int to, boolean more) {
+        int length = CompactCodec.MAX_VARINT_BYTES;
+        for (int i = from; i < to; i++) {
+            length += CompactCodec.MAX_VARINT_BYTES * 2 + surfaces[i].length() * CompactCodec.MAX_CHAR_BYTES;
+        }
+        byte[] buf = new byte[length];
+        int pos = CompactCodec.putVarint(buf, 0, (to - from) << 1 | (more ? 1 : 0));
+        int previous = 0;
+        for (int i = from; i < to; i++) {
+            int delta = costs[i] - previous;
+            pos = CompactCodec.putVarint(buf, pos, (delta << 1) ^ (delta >> 31));
+            previous = costs[i];
+            String surface = surfaces[i];
+            pos = CompactCodec.putVarint(buf, pos, surface.length());
+            for (int j = 0; j < surface.length(); j++) {
+                pos = CompactCodec.putChar(buf, pos, surface.charAt(j));
+            }
+        }
+        return Arrays.copyOf(buf, pos);
+    }
+
+    static Candidates decode(byte[] value) {
+        ByteBuffer b = ByteBuffer.wrap(value);
+        int header = CompactCodec.getVarint(b);
+        String[] surfaces = new String[header >>> 1];
+        int[] costs = new int[surfaces.length];
+        int cost = 0;
+        for (int i = 0; i < surfaces.length; i++) {
+            int zigzag = CompactCodec.getVarint(b);
+            cost += (zigzag >>> 1) ^ -(zigzag & 1);
+            costs[i] = cost;
+            char[] cs = new char[CompactCodec.getVarint(b)];
+            for (int j = 0; j < cs.length; j++) {
+                cs[j] = CompactCodec.getChar(b);
+            }
+            surfaces[i] = new String(cs);
+        }
+        return new Candidates(surfaces, null, costs, (header & 1) != 0);
+    }
+
+    // 表記の代わりに表記のIDのids[from, to)を詰める
+    static byte[] encodeIds(int[] ids, int[] costs, int from, int to, boolean more) {
+        byte[] buf = new byte[(1 + (to - from) * 2) * CompactCodec.MAX_VARINT_BYTES];
+        int pos = CompactCodec.putVarint(buf, 0, (to - from) << 1 | (more ? 1 : 0));
+        int previous = 0;
+        for (int i = from; i < to; i++) {
+            int delta = costs[i] - previous;
+            pos = CompactCodec.putVarint(buf, pos, (delta << 1) ^ (delta >> 31));
+            previous = costs[i];
+            pos = CompactCodec.putVarint(buf, pos, ids[i]);
+        }
+        return Arrays.copyOf(buf, pos);
+    }
+
+    static Candidates decodeIds(byte[] value) {
+        ByteBuffer b = ByteBuffer.wrap(value);
+        int header = CompactCodec.getVarint(b);
+        int[] ids = new int[header >>> 1];
+        int[] costs = new int[ids.length];
+        int cost = 0;
+        for (int i = 0; i < ids.length; i++) {
+            int zigzag = CompactCodec.getVarint(b);
+            cost += (zigzag >>> 1) ^ -(zigzag & 1);
+            costs[i] = cost;
+            ids[i] = CompactCodec.getVarint(b);
+        }
+        return new Candidates(null, ids, costs, (header & 1) != 0);
+    }
+
+    // 候補数だけを読む
+    static int count(byte[] value) {
+        return CompactCodec.getVarint(ByteBuffer.wrap(value)) >>> 1;
+    }
+}
@@ -0,0 +1,232 @@
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/*
+ * 文字列を一つのchar配列に重複なく格納し、0からの連番のIDを振る。
+ * Stringを作らずに文字列を登録、比較できる。
+ */
+public class CharArena {
+    char[] chars = new char[1 << 12];
+    int length = 0;
+    // IDの文字列はchars[offsets[id]]からchars[offsets[id + 1]]まで
+    int[] offsets = new int[1 << 8];
+    int size = 0;
+    // オープンアドレス法のハッシュ表。値はID+1で、0は空き
+    int[] table = new int[1 << 9];
+
+    CharArena() {
+        offsets[0] = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // 使用しているおおよそのバイト数
+    long bytes() {
+        return chars.length * 2L + offsets.length * 4L + table.length * 4L;
+    }
+
+    int intern(CharSequence cs) {
+        return intern(cs, "");
+    }
+
+    // prefixとsuffixを連結した文字列を登録し、IDを返す
+    int intern(CharSequence prefix, CharSequence suffix) {
+        int plen = prefix.length();
+        int len = plen + suffix.length();
+        int h = 0;
+        for (int i = 0; i < plen; i++) {
+            h = 31 * h + prefix.charAt(i);
+        }
+        for (int i = plen; i < len; i++) {
+            h = 31 * h + suffix.charAt(i - plen);
+        }
+        int mask = table.length - 1;
+        int slot = mix(h) & mask;
+        while (true) {
+            int v = table[slot];
+            if (v == 0) {
+                break;
+            }
+            int id = v - 1;
+            if (equals(id, prefix, suffix)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        // 新規登録
+        if (length + len > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + len));
+        }
+        for (int i = 0; i < plen; i++) {
+            chars[length++] = prefix.charAt(i);
+        }
+        for (int i = plen; i < len; i++) {
+            chars[length++] = suffix.charAt(i - plen);
+        }
+        if (size + 2 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        int id = size++;
+        offsets[id + 1] = length;
+        table[slot] = id + 1;
+        if (size * 2 > table.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    // 他のアリーナの文字列を登録する
+    int intern(CharArena other, int otherId) {
+        return intern(other.slice(otherId));
+    }
+
+    // 31倍の多項式のハッシュは似た文字列で下位のビットが偏り、線形探査で長い塊になるので、
+    // murmur3のfmix32で全てのビットを混ぜる
+    static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    static int hash(char[] chars, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + chars[i];
+        }
+        return mix(h);
+    }
+
+    // 登録済みのidの文字列を引くときに調べるスロットの数
+    int probeLength(int id) {
+        int mask = table.length - 1;
+        int slot = hash(chars, offsets[id], offsets[id + 1]) & mask;
+        int probes = 1;
+        while (table[slot] != id + 1) {
+            slot = (slot + 1) & mask;
+            probes++;
+        }
+        return probes;
+    }
+
+    void rehash() {
+        int[] newTable = new int[table.length * 2];
+        int mask = newTable.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hash(chars, offsets[id], offsets[id + 1]) & mask;
+            while (newTable[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newTable[slot] = id + 1;
+        }
+        table = newTable;
+    }
+
+    boolean equals(int id, CharSequence prefix, CharSequence suffix) {
+        int start = offsets[id];
+        int plen = prefix.length();
+        int len = plen + suffix.length();
+        if (offsets[id + 1] - start != len) {
+            return false;
+        }
+        for (int i = 0; i < plen; i++) {
+            if (chars[start + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        for (int i = plen; i < len; i++) {
+            if (chars[start + i] != suffix.charAt(i - plen)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int length(int id) {
+        return offsets[id + 1] - offsets[id];
+    }
+
+    String get(int id) {
+        return new String(chars, offsets[id], offsets[id + 1] - offsets[id]);
+    }
+
+    // IDの文字列をコピーせずに参照する
+    CharSequence slice(int id) {
+        return CharBuffer.wrap(chars, offsets[id], offsets[id + 1] - offsets[id]);
+    }
+
+    // String.compareToと同じ順序で比較する
+    int compare(int a, int b) {
+        int i = offsets[a];
+        int j = offsets[b];
+        int endA = offsets[a + 1];
+        int endB = offsets[b + 1];
+        while (i < endA && j < endB) {
+            char ca = chars[i++];
+            char cb = chars[j++];
+            if (ca != cb) {
+                return ca - cb;
+            }
+        }
+        return (endA - offsets[a]) - (endB - offsets[b]);
+    }
+
+    // IDごとの、文字列としてソートしたときの順位
+    int[] ranks() {
+        int[] ids = new int[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = i;
+        }
+        int[] tmp = new int[size];
+        mergeSort(ids, tmp, 0, size);
+        int[] ranks = new int[size];
+        for (int i = 0; i < size; i++) {
+            ranks[ids[i]] = i;
+        }
+        return ranks;
+    }
+
+    void mergeSort(int[] ids, int[] tmp, int from, int to) {
+        if (to - from <= 16) {
+            // 挿入ソート
+            for (int i = from + 1; i < to; i++) {
+                int v = ids[i];
+                int j = i - 1;
+                while (j >= from && compare(ids[j], v) > 0) {
+                    ids[j + 1] = ids[j];
+                    j--;
+                }
+                ids[j + 1] = v;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(ids, tmp, from, mid);
+        mergeSort(ids, tmp, mid, to);
+        if (compare(ids[mid - 1], ids[mid]) <= 0) {
+            return;
+        }
+        System.arraycopy(ids, from, tmp, from, to - from);
+        int i = from;
+        int j = mid;
+        int k = from;
+        while (i < mid && j < to) {
+            if (compare(tmp[i], tmp[j]) <= 0) {
+                ids[k++] = tmp[i++];
+            } else {
+                ids[k++] = tmp[j++];
+            }
+        }
+        while (i < mid) {
+            ids[k++] = tmp[i++];
+        }
+        while (j < to) {
+            ids[k++] = tmp[j++];
+        }
+    }
+}
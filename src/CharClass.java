@@ -0,0 +1,83 @@
+import java.lang.Character.UnicodeBlock;
+
+/*
+ * 読みや表記の文字種の判定。String.matchesで使っていた文字クラスを文字ごとのビットの表にしたもの。
+ *
+ * 各メソッドは対応する正規表現をString.matchesで使った場合と同じ結果を返す。
+ * 空文字列はどれにも一致しない。
+ */
+public class CharClass {
+    // [ぁ-ゖー]
+    static final int HIRAGANA = 1;
+    // [ァ-ヶ]
+    static final int KATAKANA = 2;
+    // [\p{InHiragana}\p{InKatakana}]
+    static final int KANA_BLOCK = 4;
+    // [\p{InCJKunifiedideographs}々]
+    static final int KANJI = 8;
+    // [\p{InCJKunifiedideographs}々ゝゞ]
+    static final int KANJI_GAP = 16;
+
+    static final byte[] TABLE = new byte[Character.MAX_VALUE + 1];
+
+    static {
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            int flags = 0;
+            if ((c >= 'ぁ' && c <= 'ゖ') || c == 'ー') {
+                flags |= HIRAGANA;
+            }
+            if (c >= 'ァ' && c <= 'ヶ') {
+                flags |= KATAKANA;
+            }
+            UnicodeBlock block = UnicodeBlock.of(c);
+            if (block == UnicodeBlock.HIRAGANA || block == UnicodeBlock.KATAKANA) {
+                flags |= KANA_BLOCK;
+            }
+            if (block == UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS || c == '々') {
+                flags |= KANJI | KANJI_GAP;
+            }
+            if (c == 'ゝ' || c == 'ゞ') {
+                flags |= KANJI_GAP;
+            }
+            TABLE[c] = (byte) flags;
+        }
+    }
+
+    static boolean is(char c, int mask) {
+        return (TABLE[c] & mask) != 0;
+    }
+
+    // 全ての文字がmaskのどれかに当てはまる
+    static boolean isAll(CharSequence cs, int mask) {
+        int length = cs.length();
+        if (length == 0) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if ((TABLE[cs.charAt(i)] & mask) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ^[ぁ-ゖー]+$
+    static boolean isAllHiragana(CharSequence cs) {
+        return isAll(cs, HIRAGANA);
+    }
+
+    // ^[ぁ-ゖァ-ヶー]+$
+    static boolean isAllKana(CharSequence cs) {
+        return isAll(cs, HIRAGANA | KATAKANA);
+    }
+
+    // ^[\p{InHiragana}\p{InKatakana}\p{InCJKunifiedideographs}々]+$
+    static boolean isAllKanaKanji(CharSequence cs) {
+        return isAll(cs, KANA_BLOCK | KANJI);
+    }
+
+    // ^[\p{InCJKunifiedideographs}々]+$
+    static boolean isAllKanji(CharSequence cs) {
+        return isAll(cs, KANJI);
+    }
+}
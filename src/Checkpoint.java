@@ -0,0 +1,159 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+
+/*
+ * ダンプファイルの逐次処理の途中経過をディレクトリに保存し、中断した位置から再開する。
+ *
+ * ダンプファイルをINTERVALバイトごとに改行の直後で区切って処理し、区切りごとにそれまでの結果を
+ * ソート済みのランファイル(run-00000.txtなど)に書き出して結果を空にする。続けてcheckpoint.txtに
+ * 次に読む位置とランの数を書く。どちらも一時ファイルに書いてから名前を変えるので、途中で
+ * 止まってもcheckpoint.txtが指すランは全て揃っている。
+ * 最後に全てのランを重複を除いてマージすると、中断しなかった場合と同じ出力になる。
+ */
+public class Checkpoint {
+
+    static final long INTERVAL = 64 * 1024 * 1024;
+    static final String STATE = "checkpoint.txt";
+
+    final File dir;
+    // 次に読むダンプファイルの位置
+    long offset = 0;
+    int runCount = 0;
+
+    Checkpoint(File dir) {
+        this.dir = dir;
+    }
+
+    // 新しく始める。以前のランとcheckpoint.txtは削除する
+    static Checkpoint create(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("ディレクトリを作れない: " + dir);
+        }
+        File[] files = dir.listFiles((d, name) -> name.startsWith("run-") || name.equals(STATE));
+        for (File file : files) {
+            Files.delete(file.toPath());
+        }
+        return new Checkpoint(dir);
+    }
+
+    // checkpoint.txtの位置から再開する。なければ新しく始める
+    static Checkpoint resume(File dir) throws IOException {
+        File state = new File(dir, STATE);
+        if (!state.exists()) {
+            return create(dir);
+        }
+        Checkpoint checkpoint = new Checkpoint(dir);
+        List<String> lines = Files.readAllLines(state.toPath(), StandardCharsets.UTF_8);
+        String[] ss = lines.get(0).split("\t");
+        checkpoint.offset = Long.parseLong(ss[0]);
+        checkpoint.runCount = Integer.parseInt(ss[1]);
+        return checkpoint;
+    }
+
+    File runFile(int index) {
+        return new File(dir, String.format("run-%05d.txt", index));
+    }
+
+    // 一時ファイルに書いてから置き換える
+    static BufferedWriter openTemp(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(new File(file.getPath() + ".tmp")), "UTF-8"));
+    }
+
+    static void commit(File file) throws IOException {
+        Files.move(new File(file.getPath() + ".tmp").toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // resultsをランに書き出し、次に読む位置をnextOffsetにする
+    void save(Set<String> results, long nextOffset) throws IOException {
+        if (!results.isEmpty()) {
+            File run = runFile(runCount);
+            BufferedWriter bw = openTemp(run);
+            for (String s : results) {
+                bw.write(s + "\n");
+            }
+            bw.close();
+            commit(run);
+            runCount++;
+        }
+        File state = new File(dir, STATE);
+        BufferedWriter bw = openTemp(state);
+        bw.write(nextOffset + "\t" + runCount + "\n");
+        bw.close();
+        commit(state);
+        offset = nextOffset;
+    }
+
+    // offsetから末尾までを区切りごとに処理して保存する
+    void scan(File dump, DumpScanner.LineHandler handler) throws IOException {
+        for (long[] chunk : FileChunks.split(dump, offset, INTERVAL)) {
+            Set<String> results = new TreeSet<>();
+            DumpScanner.scanChunk(dump, chunk[0], chunk[1], handler, results);
+            save(results, chunk[1]);
+        }
+    }
+
+    // ランを重複を除いてマージし、outputに一行ずつ書く
+    void merge(File output) throws IOException {
+        PriorityQueue<Head> queue = new PriorityQueue<>();
+        for (int i = 0; i < runCount; i++) {
+            Head head = new Head(new BufferedReader(new InputStreamReader(
+                    new FileInputStream(runFile(i)), StandardCharsets.UTF_8)));
+            if (head.read()) {
+                queue.add(head);
+            }
+        }
+        BufferedWriter bw = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(output), "UTF-8"));
+        String last = null;
+        Head head;
+        while ((head = queue.poll()) != null) {
+            if (!head.line.equals(last)) {
+                bw.write(head.line + "\n");
+                last = head.line;
+            }
+            if (head.read()) {
+                queue.add(head);
+            }
+        }
+        bw.flush();
+        bw.close();
+    }
+
+    static class Head implements Comparable<Head> {
+        final BufferedReader in;
+        String line;
+
+        Head(BufferedReader in) {
+            this.in = in;
+        }
+
+        boolean read() throws IOException {
+            line = in.readLine();
+            if (line == null) {
+                in.close();
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int compareTo(Head o) {
+            return line.compareTo(o.line);
+        }
+    }
+}
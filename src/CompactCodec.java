@@ -0,0 +1,68 @@
+import java.nio.ByteBuffer;
+
+/*
+ * 辞書を短く書くための可変長整数と文字の符号。
+ *
+ * 整数は下位から7ビットずつ、続きがあれば最上位ビットを立てる。
+ * 文字は1文字ごとに次の形式。
+ * 0x00-0xBF: U+3040-U+30FF(ひらがな・カタカナ)
+ * 0xC0-0xFE + 1バイト: U+4E00-U+8CFF(漢字の大部分)
+ * 0xFF + 2バイト: その他の文字
+ */
+public class CompactCodec {
+    static final char KANA_BASE = '\u3040';
+    static final char KANJI_BASE = '\u4e00';
+    // 1文字、1整数の最大のバイト数
+    static final int MAX_CHAR_BYTES = 3;
+    static final int MAX_VARINT_BYTES = 5;
+
+    // buf[pos...]にvを書き、次の位置を返す
+    static int putVarint(byte[] buf, int pos, int v) {
+        while ((v & ~0x7f) != 0) {
+            buf[pos++] = (byte) ((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        buf[pos++] = (byte) v;
+        return pos;
+    }
+
+    static int getVarint(ByteBuffer b) {
+        int v = 0;
+        int shift = 0;
+        while (true) {
+            byte x = b.get();
+            v |= (x & 0x7f) << shift;
+            if (x >= 0) {
+                return v;
+            }
+            shift += 7;
+        }
+    }
+
+    // buf[pos...]にcを書き、次の位置を返す
+    static int putChar(byte[] buf, int pos, char c) {
+        if (c >= KANA_BASE && c < KANA_BASE + 0xc0) {
+            buf[pos++] = (byte) (c - KANA_BASE);
+        } else if (c >= KANJI_BASE && c < KANJI_BASE + 0x3f00) {
+            int v = c - KANJI_BASE;
+            buf[pos++] = (byte) (0xc0 + (v >>> 8));
+            buf[pos++] = (byte) v;
+        } else {
+            buf[pos++] = (byte) 0xff;
+            buf[pos++] = (byte) (c >>> 8);
+            buf[pos++] = (byte) c;
+        }
+        return pos;
+    }
+
+    static char getChar(ByteBuffer b) {
+        int x = b.get() & 0xff;
+        if (x < 0xc0) {
+            return (char) (KANA_BASE + x);
+        }
+        if (x < 0xff) {
+            return (char) (KANJI_BASE + ((x - 0xc0) << 8 | (b.get() & 0xff)));
+        }
+        return b.getChar();
+    }
+}
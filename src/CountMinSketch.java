@@ -0,0 +1,98 @@
+/*
+ * 大きさを決めた表で文字列の出現回数を数える(Count-Min Sketch)。
+ *
+ * depth行width列のカウンタを持ち、文字列ごとに行ごとのハッシュで選んだ列を増やす。
+ * 回数は選んだカウンタの最小値で、実際の回数より小さくなることはない。
+ * 増やすときは最小値のカウンタだけを増やし(conservative update)、他の文字列と衝突した分の過大評価を抑える。
+ * 語彙が増えてもメモリは増えない。
+ */
+public class CountMinSketch {
+    static final int DEPTH = 4;
+    static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    final int width;
+    final int[] counts;
+    final int[] index = new int[DEPTH];
+
+    // bytesバイトに収まる大きさにする
+    CountMinSketch(long bytes) {
+        long w = bytes / (4L * DEPTH);
+        if (w < 1 || w > Integer.MAX_VALUE / DEPTH) {
+            throw new IllegalArgumentException("大きさが範囲外: " + bytes);
+        }
+        width = (int) w;
+        counts = new int[DEPTH * width];
+    }
+
+    // 文字列のハッシュ(FNV-1a)。一文字ずつ伸ばす場合はFNV_OFFSETからnextで続ける
+    static long next(long hash, char ch) {
+        return (hash ^ ch) * 0x100000001b3L;
+    }
+
+    static long hash(CharSequence s) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < s.length(); i++) {
+            hash = next(hash, s.charAt(i));
+        }
+        return hash;
+    }
+
+    // 行ごとに別のハッシュにする(splitmix64)
+    void indexes(long hash) {
+        for (int row = 0; row < DEPTH; row++) {
+            long z = hash + (row + 1) * 0x9e3779b97f4a7c15L;
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            z ^= z >>> 31;
+            index[row] = row * width + (int) ((z >>> 1) % width);
+        }
+    }
+
+    void add(long hash) {
+        indexes(hash);
+        int min = Integer.MAX_VALUE;
+        for (int i : index) {
+            min = Math.min(min, counts[i]);
+        }
+        if (min == Integer.MAX_VALUE) {
+            return;
+        }
+        for (int i : index) {
+            if (counts[i] == min) {
+                counts[i] = min + 1;
+            }
+        }
+    }
+
+    int estimate(long hash) {
+        indexes(hash);
+        int min = Integer.MAX_VALUE;
+        for (int i : index) {
+            min = Math.min(min, counts[i]);
+        }
+        return min;
+    }
+
+    int estimate(CharSequence s) {
+        return estimate(hash(s));
+    }
+
+    /*
+     * textのうちmaskの文字が続く部分から、長さmaxLength以下の部分文字列を全て数える。
+     * 数えた部分文字列はestimateで引ける。
+     */
+    void addSubstrings(CharSequence text, int mask, int maxLength) {
+        int length = text.length();
+        for (int start = 0; start < length; start++) {
+            long hash = FNV_OFFSET;
+            for (int i = start; i < length && i - start < maxLength; i++) {
+                char ch = text.charAt(i);
+                if (!CharClass.is(ch, mask)) {
+                    break;
+                }
+                hash = next(hash, ch);
+                add(hash);
+            }
+        }
+    }
+}
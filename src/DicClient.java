@@ -0,0 +1,142 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * DicServerに接続して辞書を引く。一つの接続を使い回すので、同時に使うスレッドごとに作ること。
+ *
+ * java -cp bin DicClient [--port N | --unix PATH] GET 読み
+ * のように、残りの引数を一つの要求として送り、応答を表示することもできる。
+ */
+public class DicClient implements Closeable {
+    final SocketChannel channel;
+    final BufferedReader in;
+    final BufferedWriter out;
+
+    DicClient(SocketChannel channel) {
+        this.channel = channel;
+        in = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+        out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8));
+    }
+
+    // localhostのport
+    static DicClient connect(int port) throws IOException {
+        return new DicClient(SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port)));
+    }
+
+    static DicClient connectUnix(String path) throws IOException {
+        SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.connect(UnixDomainSocketAddress.of(Path.of(path)));
+        return new DicClient(channel);
+    }
+
+    // 要求を送り、ENDまでの結果の行を返す
+    List<String> request(String request) throws IOException {
+        out.write(request + "\n");
+        out.flush();
+        List<String> lines = new ArrayList<>();
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.equals(DicServer.END)) {
+                return lines;
+            }
+            if (line.startsWith("ERR")) {
+                throw new IOException(line);
+            }
+            lines.add(line);
+        }
+        throw new IOException("接続が切れた");
+    }
+
+    static String[] surfaces(String line) {
+        int tab = line.indexOf('\t');
+        return tab < 0 ? null : line.substring(tab + 1).split("\t");
+    }
+
+    // 全ての表記。なければnull
+    String[] get(String reading) throws IOException {
+        List<String> lines = request("GET " + reading);
+        return lines.isEmpty() ? null : surfaces(lines.get(0));
+    }
+
+    // 読みごとの表記。なければnull
+    List<String[]> batch(List<String> readings) throws IOException {
+        List<String[]> result = new ArrayList<>();
+        for (String line : request("BATCH " + String.join("\t", readings))) {
+            result.add(surfaces(line));
+        }
+        return result;
+    }
+
+    // prefixで始まる読みと表記を昇順にlimit件まで
+    Map<String, String[]> prefix(String prefix, int limit) throws IOException {
+        Map<String, String[]> result = new LinkedHashMap<>();
+        for (String line : request("PREFIX " + prefix + " " + limit)) {
+            int tab = line.indexOf('\t');
+            result.put(tab < 0 ? line : line.substring(0, tab), surfaces(line));
+        }
+        return result;
+    }
+
+    Map<String, Long> stats() throws IOException {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (String line : request("STATS")) {
+            String[] ss = line.split("\t");
+            result.put(ss[0], Long.parseLong(ss[1]));
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            out.write("QUIT\n");
+            out.flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    static public void main(String argv[]) throws Exception {
+        int port = DicServer.DEFAULT_PORT;
+        String unix = null;
+        int i = 0;
+        for (; i < argv.length && argv[i].startsWith("--"); i++) {
+            switch (argv[i]) {
+                case "--port":
+                    port = Integer.parseInt(argv[++i]);
+                    break;
+                case "--unix":
+                    unix = argv[++i];
+                    break;
+                default:
+                    System.err.println("不明なオプション: " + argv[i]);
+                    System.exit(1);
+            }
+        }
+        StringBuilder request = new StringBuilder();
+        for (; i < argv.length; i++) {
+            request.append(request.length() == 0 ? "" : " ").append(argv[i]);
+        }
+        try (DicClient client = unix != null ? connectUnix(unix) : connect(port)) {
+            for (String line : client.request(request.toString())) {
+                System.out.println(line);
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * system_dic.manifest: 辞書を生成したときの入力ファイルのSHA-256と、BTreeの値の形式を決めるオプション。
+ *
+ * 一行に「入力ファイル\tSHA-256」、最後に「options\tオプション」を書く。
+ * 出力を書き終えてから一時ファイルを経由して書くので、これがあれば前回の出力は揃っている。
+ */
+public class DicManifest {
+    static final String OPTIONS = "options";
+
+    // 入力ファイルとSHA-256、最後にOPTIONSとオプション
+    final Map<String, String> entries = new LinkedHashMap<>();
+
+    static DicManifest of(String[] inputs, String options) throws IOException {
+        DicManifest manifest = new DicManifest();
+        for (String input : inputs) {
+            manifest.entries.put(input, sha256(new File(input)));
+        }
+        manifest.entries.put(OPTIONS, options);
+        return manifest;
+    }
+
+    // なければnull
+    static DicManifest read(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        DicManifest manifest = new DicManifest();
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        for (String line : lines) {
+            String[] ss = line.split("\t", 2);
+            if (ss.length == 2) {
+                manifest.entries.put(ss[0], ss[1]);
+            }
+        }
+        return manifest;
+    }
+
+    void write(File file) throws IOException {
+        BufferedWriter bw = Checkpoint.openTemp(file);
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            bw.write(entry.getKey() + "\t" + entry.getValue() + "\n");
+        }
+        bw.close();
+        Checkpoint.commit(file);
+    }
+
+    boolean sameOptions(DicManifest o) {
+        return entries.get(OPTIONS).equals(o.entries.get(OPTIONS));
+    }
+
+    // 前回から内容の変わった入力ファイル
+    List<String> changedInputs(DicManifest previous) {
+        List<String> changed = new ArrayList<>();
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            if (!entry.getKey().equals(OPTIONS)
+                    && !entry.getValue().equals(previous.entries.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        return changed;
+    }
+
+    static String sha256(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        byte[] buf = new byte[1024 * 1024];
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                digest.update(buf, 0, n);
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,313 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import jdbm.btree.BTree;
+import jdbm.helper.Tuple;
+import jdbm.helper.TupleBrowser;
+
+/*
+ * 辞書を一度だけ開き、localhostのTCPかUnixドメインソケットで検索を受け付ける。
+ *
+ * 要求と応答はUTF-8の行。応答は結果の行を並べ、最後にENDの行を書く。失敗したらERRで始まる行だけを書く。
+ *   GET 読み             「読み\t表記\t表記...」。なければ結果の行はない
+ *   BATCH 読み\t読み...  読みごとに一行。なければ「読み」だけ
+ *   PREFIX 読み [件数]   読みで始まる読みを昇順に件数まで「読み\t表記...」
+ *   STATS               「名前\t値」の行
+ *   QUIT                接続を閉じる
+ *
+ * 接続ごとに仮想スレッド(Java 21以降、それより前はスレッドプール)で処理する。
+ * jdbmは複数のスレッドから同時に使えないので辞書の検索は一つずつ行い、よく引く読みはLRUのキャッシュから返す。
+ */
+public class DicServer {
+    static final int DEFAULT_PORT = 7373;
+    static final int DEFAULT_CACHE_SIZE = 65536;
+    static final int DEFAULT_PREFIX_LIMIT = 16;
+    static final String END = "END";
+
+    // 件数の上限を超えたら最も長く使われていない読みを捨てる
+    static class LruCache {
+        final Map<String, String[]> map;
+
+        LruCache(int capacity) {
+            map = new LinkedHashMap<String, String[]>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String[]> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        synchronized String[] get(String reading) {
+            return map.get(reading);
+        }
+
+        synchronized boolean contains(String reading) {
+            return map.containsKey(reading);
+        }
+
+        synchronized void put(String reading, String[] surfaces) {
+            map.put(reading, surfaces);
+        }
+    }
+
+    final BTreeDic dic;
+    final ShardedDic sharded;
+    final LruCache cache;
+    // 仮想スレッドがsynchronizedでキャリアスレッドを占有しないようReentrantLockにする
+    final ReentrantLock lock = new ReentrantLock();
+    final LongAdder requests = new LongAdder();
+    final LongAdder lookups = new LongAdder();
+    final LongAdder cacheHits = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LongAdder latencyNanos = new LongAdder();
+    final AtomicLong maxLatencyNanos = new AtomicLong();
+    final LongAdder connections = new LongAdder();
+
+    // dicかshardedのどちらか
+    DicServer(BTreeDic dic, ShardedDic sharded, int cacheSize) {
+        this.dic = dic;
+        this.sharded = sharded;
+        this.cache = new LruCache(cacheSize);
+    }
+
+    BTreeDic dicFor(String reading) throws IOException {
+        return sharded != null ? sharded.shard(reading) : dic;
+    }
+
+    // 全ての表記。なければnull
+    String[] lookup(String reading) throws IOException {
+        lookups.increment();
+        // 辞書にない読みもnullとしてキャッシュする
+        String[] surfaces = cache.get(reading);
+        if (surfaces != null || cache.contains(reading)) {
+            cacheHits.increment();
+            return surfaces;
+        }
+        lock.lock();
+        try {
+            surfaces = dicFor(reading).surfaces(reading);
+        } finally {
+            lock.unlock();
+        }
+        cache.put(reading, surfaces);
+        return surfaces;
+    }
+
+    // prefixで始まる読みを昇順にlimit件まで
+    List<String> prefix(String prefix, int limit) throws IOException {
+        List<String> readings = new ArrayList<>();
+        if (prefix.isEmpty()) {
+            return readings;
+        }
+        // 読みを先頭の文字で分けているので、同じ文字で始まる読みは同じ範囲にある
+        lock.lock();
+        try {
+            BTree tree = dicFor(prefix).tree;
+            TupleBrowser browser = tree.browse(prefix);
+            Tuple tuple = new Tuple();
+            while (readings.size() < limit && browser.getNext(tuple)) {
+                String reading = (String) tuple.getKey();
+                if (!reading.startsWith(prefix)) {
+                    break;
+                }
+                readings.add(reading);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return readings;
+    }
+
+    static String line(String reading, String[] surfaces) {
+        return surfaces == null ? reading : reading + "\t" + String.join("\t", surfaces);
+    }
+
+    // 一つの要求に応答する。QUITならfalse
+    boolean handle(String request, BufferedWriter out) throws IOException {
+        int space = request.indexOf(' ');
+        String command = space < 0 ? request : request.substring(0, space);
+        String arg = space < 0 ? "" : request.substring(space + 1);
+        switch (command) {
+            case "GET": {
+                String[] surfaces = lookup(arg);
+                if (surfaces != null) {
+                    out.write(line(arg, surfaces) + "\n");
+                }
+                break;
+            }
+            case "BATCH":
+                for (String reading : arg.split("\t")) {
+                    out.write(line(reading, lookup(reading)) + "\n");
+                }
+                break;
+            case "PREFIX": {
+                String[] ss = arg.split(" ");
+                int limit = ss.length > 1 ? Integer.parseInt(ss[1]) : DEFAULT_PREFIX_LIMIT;
+                for (String reading : prefix(ss[0], limit)) {
+                    out.write(line(reading, lookup(reading)) + "\n");
+                }
+                break;
+            }
+            case "STATS":
+                for (Map.Entry<String, Long> entry : stats().entrySet()) {
+                    out.write(entry.getKey() + "\t" + entry.getValue() + "\n");
+                }
+                break;
+            case "QUIT":
+                return false;
+            default:
+                throw new IllegalArgumentException("不明な要求: " + command);
+        }
+        out.write(END + "\n");
+        return true;
+    }
+
+    Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        long count = requests.sum();
+        stats.put("connections", connections.sum());
+        stats.put("requests", count);
+        stats.put("errors", errors.sum());
+        stats.put("lookups", lookups.sum());
+        stats.put("cacheHits", cacheHits.sum());
+        stats.put("meanLatencyMicros", count > 0 ? latencyNanos.sum() / count / 1000 : 0);
+        stats.put("maxLatencyMicros", maxLatencyNanos.get() / 1000);
+        return stats;
+    }
+
+    void serve(SocketChannel channel) {
+        connections.increment();
+        try (SocketChannel c = channel;
+                BufferedReader in = new BufferedReader(new InputStreamReader(
+                        Channels.newInputStream(c), StandardCharsets.UTF_8));
+                BufferedWriter out = new BufferedWriter(new OutputStreamWriter(
+                        Channels.newOutputStream(c), StandardCharsets.UTF_8))) {
+            String request;
+            while ((request = in.readLine()) != null) {
+                long start = System.nanoTime();
+                boolean more;
+                try {
+                    more = handle(request, out);
+                } catch (IOException | RuntimeException e) {
+                    errors.increment();
+                    out.write("ERR " + e.getMessage() + "\n");
+                    more = true;
+                }
+                // 続けて送られた要求がなければまとめて送る
+                if (!in.ready()) {
+                    out.flush();
+                }
+                long latency = System.nanoTime() - start;
+                requests.increment();
+                latencyNanos.add(latency);
+                maxLatencyNanos.accumulateAndGet(latency, Math::max);
+                if (!more) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            // 相手が切断した
+        }
+    }
+
+    // Java 21以降は仮想スレッド、それより前はスレッドプールで接続ごとに処理する
+    static ExecutorService connectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    void run(ServerSocketChannel server) throws IOException {
+        ExecutorService executor = connectionExecutor();
+        try {
+            while (true) {
+                SocketChannel channel = server.accept();
+                executor.submit(() -> serve(channel));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    static public void main(String argv[]) throws Exception {
+        String name = GenDic.SYS_DIC_NAME;
+        int port = DEFAULT_PORT;
+        String unix = null;
+        int cacheSize = DEFAULT_CACHE_SIZE;
+        boolean ranked = false;
+        boolean pool = false;
+        boolean shards = false;
+        for (int i = 0; i < argv.length; i++) {
+            switch (argv[i]) {
+                case "--dic":
+                    name = argv[++i];
+                    break;
+                case "--port":
+                    port = Integer.parseInt(argv[++i]);
+                    break;
+                case "--unix":
+                    unix = argv[++i];
+                    break;
+                case "--cache":
+                    cacheSize = Integer.parseInt(argv[++i]);
+                    break;
+                case "--ranked":
+                    ranked = true;
+                    break;
+                case "--pool":
+                    pool = true;
+                    break;
+                case "--shards":
+                    shards = true;
+                    break;
+                default:
+                    System.err.println("不明なオプション: " + argv[i]);
+                    System.exit(1);
+            }
+        }
+
+        // 辞書の値の形式はGenDicに指定したオプションに合わせる
+        SurfacePool surfacePool = pool ? new SurfacePool(new File(name + ".pool")) : null;
+        DicServer server = shards
+                ? new DicServer(null, new ShardedDic(name, GenDic.BTREE_NAME, ranked, surfacePool), cacheSize)
+                : new DicServer(new BTreeDic(name, GenDic.BTREE_NAME, ranked, surfacePool), null, cacheSize);
+
+        ServerSocketChannel channel;
+        if (unix != null) {
+            Path path = Path.of(unix);
+            Files.deleteIfExists(path);
+            channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            channel.bind(UnixDomainSocketAddress.of(path));
+        } else {
+            channel = ServerSocketChannel.open();
+            channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        }
+        System.err.println("待ち受け: " + channel.getLocalAddress());
+        server.run(channel);
+    }
+}
@@ -0,0 +1,12 @@
+import java.io.IOException;
+
+/*
+ * GenDicが読みごとにまとめた候補を書き出す出力形式。
+ * 読みは昇順に一度ずつ渡される。候補はコストの小さい順で、costsは各表記の最小のコスト。
+ */
+public interface DicWriter {
+
+    void add(String reading, String[] surfaces, int[] costs) throws IOException;
+
+    void close() throws IOException;
+}
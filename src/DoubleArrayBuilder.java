@@ -0,0 +1,118 @@
+import java.util.Arrays;
+
+/*
+ * ソート済みで重複のないキーの集合からダブル配列を構築する。
+ *
+ * 文字はcodeOfで1からの連番のコードに置き換える。コード0はキーの終端を表し、
+ * 終端ノードのbaseには-(キー番号 + 1)を入れる。ノードtの親がsであることは
+ * check[t] == sで確かめる。空きはcheck == -1で、根はノード0。
+ */
+public class DoubleArrayBuilder {
+    final CharArena keys;
+    final int keyCount;
+    final int[] codeTable;
+    final int charMin;
+    int[] base = new int[1 << 12];
+    int[] check = new int[1 << 12];
+    int size = 1;
+    // これより前に空きはない
+    int firstFree = 1;
+
+    // keysのIDは0からkeyCount - 1までがキーの昇順であること
+    DoubleArrayBuilder(CharArena keys, int keyCount, int charMin, int[] codeTable) {
+        this.keys = keys;
+        this.keyCount = keyCount;
+        this.charMin = charMin;
+        this.codeTable = codeTable;
+        Arrays.fill(check, -1);
+        check[0] = 0;
+    }
+
+    int code(int key, int depth) {
+        if (depth >= keys.length(key)) {
+            return 0;
+        }
+        return codeTable[keys.chars[keys.offsets[key] + depth] - charMin];
+    }
+
+    void build() {
+        if (keyCount > 0) {
+            insert(0, 0, keyCount, 0);
+        }
+    }
+
+    // キー[lo, hi)の先頭depth文字が共通するノードparentの子を配置する
+    void insert(int parent, int lo, int hi, int depth) {
+        // 兄弟のコードと範囲を集める
+        int n = 0;
+        int[] codes = new int[Math.min(hi - lo, 64)];
+        int[] starts = new int[codes.length + 1];
+        int prev = -1;
+        for (int k = lo; k < hi; k++) {
+            int c = code(k, depth);
+            if (c != prev) {
+                if (n == codes.length) {
+                    codes = Arrays.copyOf(codes, n * 2);
+                    starts = Arrays.copyOf(starts, n * 2 + 1);
+                }
+                codes[n] = c;
+                starts[n] = k;
+                n++;
+                prev = c;
+            }
+        }
+        starts[n] = hi;
+
+        int b = findBase(codes, n);
+        base[parent] = b;
+        for (int i = 0; i < n; i++) {
+            check[b + codes[i]] = parent;
+        }
+        for (int i = 0; i < n; i++) {
+            int t = b + codes[i];
+            if (codes[i] == 0) {
+                // 終端。ソート済みなので範囲の先頭が長さdepthのキー
+                base[t] = -(starts[i] + 1);
+            } else {
+                insert(t, starts[i], starts[i + 1], depth + 1);
+            }
+        }
+    }
+
+    // 全ての子が空きに収まるbaseを探す
+    int findBase(int[] codes, int n) {
+        while (firstFree < check.length && check[firstFree] != -1) {
+            firstFree++;
+        }
+        int pos = Math.max(firstFree, codes[0] + 1);
+        while (true) {
+            ensure(pos + 1);
+            if (check[pos] == -1) {
+                int b = pos - codes[0];
+                ensure(b + codes[n - 1] + 1);
+                boolean ok = true;
+                for (int i = 1; i < n; i++) {
+                    if (check[b + codes[i]] != -1) {
+                        ok = false;
+                        break;
+                    }
+                }
+                if (ok) {
+                    size = Math.max(size, b + codes[n - 1] + 1);
+                    return b;
+                }
+            }
+            pos++;
+        }
+    }
+
+    void ensure(int length) {
+        if (length > check.length) {
+            int newLength = Math.max(check.length * 2, length);
+            int oldLength = check.length;
+            base = Arrays.copyOf(base, newLength);
+            check = Arrays.copyOf(check, newLength);
+            Arrays.fill(check, oldLength, newLength, -1);
+        }
+    }
+}
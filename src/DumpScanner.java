@@ -0,0 +1,155 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Wikipediaのダンプファイルを改行位置で区切ったバイト範囲に分け、複数のスレッドで一行ずつ処理する。
+ *
+ * 各スレッドは範囲を順に取って自分のTreeSetに結果を集め、最後に一つのTreeSetにまとめる。
+ * 範囲は改行の直後で区切るので、各行はBufferedReader.readLineで読んだものと同じになる。
+ *
+ * markersを指定した場合は範囲をメモリマップし、マップしたバイト列からmarkersのどれかを含む行だけを
+ * 探してStringにする。それ以外の行はヒープに読み込まない。
+ */
+public class DumpScanner {
+
+    // 一行を処理し、結果をoutに加える
+    interface LineHandler {
+        void handle(String line, Set<String> out) throws IOException;
+    }
+
+    static final long CHUNK_SIZE = 16 * 1024 * 1024;
+
+    static final File DUMP = new File("data/jawiki-latest-pages-articles.xml");
+    static final File DUMP_BZ2 = new File("data/jawiki-latest-pages-articles.xml.bz2");
+    static final File MULTISTREAM = new File("data/jawiki-latest-pages-articles-multistream.xml.bz2");
+    static final File MULTISTREAM_INDEX = new File("data/jawiki-latest-pages-articles-multistream-index.txt.bz2");
+
+    static Set<String> scan(File file, int threads, LineHandler handler) throws IOException {
+        return scan(file, threads, null, handler);
+    }
+
+    // markersがnullでなければ、markersを含まない行はhandlerに渡さない
+    static Set<String> scan(File file, int threads, BytePatterns markers, LineHandler handler)
+            throws IOException {
+        List<long[]> chunks = FileChunks.split(file, CHUNK_SIZE);
+        AtomicInteger next = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        List<ForkJoinTask<Set<String>>> tasks = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            tasks.add(pool.submit(() -> {
+                Set<String> out = new TreeSet<>();
+                int index;
+                while ((index = next.getAndIncrement()) < chunks.size()) {
+                    long[] chunk = chunks.get(index);
+                    if (markers == null) {
+                        scanChunk(file, chunk[0], chunk[1], handler, out);
+                    } else {
+                        scanMapped(file, chunk[0], chunk[1], markers, handler, out);
+                    }
+                }
+                return out;
+            }));
+        }
+        Set<String> result = new TreeSet<>();
+        try {
+            for (ForkJoinTask<Set<String>> task : tasks) {
+                result.addAll(task.get());
+            }
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return result;
+    }
+
+    // --bz2、--multistreamの指定に応じたダンプファイル。bzip2はthreadsのスレッドで展開する
+    static InputStream open(boolean bz2, boolean multistream, int threads) throws IOException {
+        if (multistream) {
+            return BZip2InputStream.openMultistream(MULTISTREAM, MULTISTREAM_INDEX, threads);
+        }
+        if (bz2) {
+            return new BZip2InputStream(DUMP_BZ2, threads);
+        }
+        return new FileInputStream(DUMP);
+    }
+
+    // inを先頭から一行ずつ処理する
+    static void readLines(InputStream in, LineHandler handler, Set<String> out) throws IOException {
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                handler.handle(line, out);
+            }
+        }
+    }
+
+    static void scanChunk(File file, long start, long end, LineHandler handler, Set<String> out)
+            throws IOException {
+        byte[] bytes = FileChunks.read(file, start, end);
+        BufferedReader br = new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(bytes), StandardCharsets.UTF_8));
+        String line;
+        while ((line = br.readLine()) != null) {
+            handler.handle(line, out);
+        }
+        br.close();
+    }
+
+    static void scanMapped(File file, long start, long end, BytePatterns markers, LineHandler handler,
+            Set<String> out) throws IOException {
+        MappedByteBuffer mb;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            mb = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        }
+        int limit = mb.limit();
+        byte[] bytes = new byte[1024];
+        int pos = 0;
+        int hit;
+        while ((hit = markers.indexOf(mb, pos, limit)) >= 0) {
+            // 見つかった位置を含む行。readLineと同じく\rも行の区切りとする
+            int lineStart = hit;
+            while (lineStart > pos && !isLineEnd(mb.get(lineStart - 1))) {
+                lineStart--;
+            }
+            int lineEnd = hit;
+            while (lineEnd < limit && !isLineEnd(mb.get(lineEnd))) {
+                lineEnd++;
+            }
+            int length = lineEnd - lineStart;
+            if (bytes.length < length) {
+                bytes = new byte[length * 2];
+            }
+            mb.get(lineStart, bytes, 0, length);
+            handler.handle(new String(bytes, 0, length, StandardCharsets.UTF_8), out);
+            pos = lineEnd + 1;
+        }
+    }
+
+    static boolean isLineEnd(byte b) {
+        return b == '\n' || b == '\r';
+    }
+}
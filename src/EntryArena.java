@@ -0,0 +1,151 @@
+import java.util.Arrays;
+
+/*
+ * 辞書のエントリ(読み、コスト、表記)をまとめて格納する。
+ * 
+ * 読みと表記はCharArenaでIDにし、エントリ一つを
+ * 読みID(23ビット)、コスト(16ビット)、表記ID(24ビット)のlongに詰める。
+ * sort()でIDを文字列としての順位に置き換えてlongのままソートすると、
+ * (読み, コスト, 表記)の順に並ぶ。
+ */
+public class EntryArena {
+    static final int READING_BITS = 23;
+    static final int COST_BITS = 16;
+    static final int SURFACE_BITS = 24;
+    static final int MAX_READINGS = 1 << READING_BITS;
+    static final int MAX_SURFACES = 1 << SURFACE_BITS;
+    static final int COST_BIAS = 1 << (COST_BITS - 1);
+    static final long COST_MASK = (1L << COST_BITS) - 1;
+    static final long SURFACE_MASK = (1L << SURFACE_BITS) - 1;
+
+    final CharArena readings = new CharArena();
+    final CharArena surfaces = new CharArena();
+    long[] entries = new long[1 << 10];
+    int size = 0;
+    boolean sorted = false;
+    // sort()後の順位からIDへの対応
+    int[] readingByRank;
+    int[] surfaceByRank;
+
+    static long pack(int reading, int cost, int surface) {
+        // 範囲外のIDは隣のフィールドに溢れてソートの順序を壊すので、黙って詰めずに止める
+        if (reading < 0 || reading >= MAX_READINGS) {
+            throw new IllegalArgumentException("読みIDが範囲外: " + reading);
+        }
+        if (surface < 0 || surface >= MAX_SURFACES) {
+            throw new IllegalArgumentException("表記IDが範囲外: " + surface);
+        }
+        if (cost < -COST_BIAS || cost >= COST_BIAS) {
+            throw new IllegalArgumentException("コストが範囲外: " + cost);
+        }
+        return ((long) reading << (COST_BITS + SURFACE_BITS))
+                | ((long) (cost + COST_BIAS) << SURFACE_BITS) | surface;
+    }
+
+    static int readingOf(long entry) {
+        return (int) (entry >>> (COST_BITS + SURFACE_BITS));
+    }
+
+    static int costOf(long entry) {
+        return (int) ((entry >>> SURFACE_BITS) & COST_MASK) - COST_BIAS;
+    }
+
+    static int surfaceOf(long entry) {
+        return (int) (entry & SURFACE_MASK);
+    }
+
+    int size() {
+        return size;
+    }
+
+    // IDの上限に近づいたらソートして書き出す必要がある
+    boolean isFull() {
+        return readings.size() >= MAX_READINGS - 1 || surfaces.size() >= MAX_SURFACES - 1;
+    }
+
+    // 使用しているおおよそのバイト数
+    long bytes() {
+        return readings.bytes() + surfaces.bytes() + entries.length * 8L;
+    }
+
+    void add(CharSequence reading, int cost, CharSequence surface) {
+        add(reading, "", cost, surface, "");
+    }
+
+    // 語尾を補完したエントリ。Stringを連結せずに登録する
+    void add(CharSequence reading, String readingSuffix, int cost, CharSequence surface,
+            String surfaceSuffix) {
+        int r = readings.intern(reading, readingSuffix);
+        int s = surfaces.intern(surface, surfaceSuffix);
+        append(pack(r, cost, s));
+    }
+
+    // 他のアリーナのi番目のエントリを追加する
+    void add(EntryArena other, int i) {
+        long e = other.entries[i];
+        int r = readings.intern(other.readings, readingOf(e));
+        int s = surfaces.intern(other.surfaces, surfaceOf(e));
+        append(pack(r, costOf(e), s));
+    }
+
+    void append(long entry) {
+        if (sorted) {
+            throw new IllegalStateException("ソート後は追加できない");
+        }
+        if (size == entries.length) {
+            entries = Arrays.copyOf(entries, entries.length * 2);
+        }
+        entries[size++] = entry;
+    }
+
+    // (読み, コスト, 表記)の順にソートし、重複を除く。ソート済みなら何もしない
+    void sort() {
+        if (sorted) {
+            return;
+        }
+        int[] readingRanks = readings.ranks();
+        int[] surfaceRanks = surfaces.ranks();
+        readingByRank = new int[readingRanks.length];
+        for (int id = 0; id < readingRanks.length; id++) {
+            readingByRank[readingRanks[id]] = id;
+        }
+        surfaceByRank = new int[surfaceRanks.length];
+        for (int id = 0; id < surfaceRanks.length; id++) {
+            surfaceByRank[surfaceRanks[id]] = id;
+        }
+        for (int i = 0; i < size; i++) {
+            long e = entries[i];
+            entries[i] = pack(readingRanks[readingOf(e)], costOf(e), surfaceRanks[surfaceOf(e)]);
+        }
+        Arrays.sort(entries, 0, size);
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (n == 0 || entries[n - 1] != entries[i]) {
+                entries[n++] = entries[i];
+            }
+        }
+        size = n;
+        sorted = true;
+    }
+
+    // 以下はsort()後のi番目のエントリ
+    int readingId(int i) {
+        return readingByRank[readingOf(entries[i])];
+    }
+
+    String reading(int i) {
+        return readings.get(readingId(i));
+    }
+
+    int cost(int i) {
+        return costOf(entries[i]);
+    }
+
+    int surfaceId(int i) {
+        return surfaceByRank[surfaceOf(entries[i])];
+    }
+
+    String surface(int i) {
+        return surfaces.get(surfaceId(i));
+    }
+}
@@ -0,0 +1,287 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/*
+ * 辞書のエントリ(読み、コスト、表記)をソートし、重複を除いた順に取り出す。
+ *
+ * エントリはEntryArenaに詰めて格納する。メモリ上限を指定した場合は、上限に達するたびに
+ * ソートしたランを一時ファイルに書き出し、取り出すときに全てのランをk-wayマージする。
+ * 上限が0なら全てメモリ上でソートする。
+ */
+public class EntrySorter {
+
+    // 同時に開くランファイルの上限
+    static final int MAX_FAN_IN = 64;
+
+    // ソート済みのエントリを順に読み出す
+    interface Cursor {
+        boolean next() throws IOException;
+
+        String reading();
+
+        int cost();
+
+        String surface();
+    }
+
+    final long memoryLimit;
+    final File tempDir;
+    EntryArena run = new EntryArena();
+    List<File> runFiles = new ArrayList<>();
+
+    EntrySorter(long memoryLimit, File tempDir) {
+        this.memoryLimit = memoryLimit;
+        this.tempDir = tempDir;
+    }
+
+    void add(CharSequence reading, int cost, CharSequence surface) throws IOException {
+        run.add(reading, cost, surface);
+        checkLimit();
+    }
+
+    void add(CharSequence reading, String readingSuffix, int cost, CharSequence surface,
+            String surfaceSuffix) throws IOException {
+        run.add(reading, readingSuffix, cost, surface, surfaceSuffix);
+        checkLimit();
+    }
+
+    // 並列に読んだチャンクは大きいので、途中でIDの上限やメモリの上限に達したらそこで書き出す
+    void addAll(EntryArena entries) throws IOException {
+        for (int i = 0; i < entries.size(); i++) {
+            run.add(entries, i);
+            checkLimit();
+        }
+    }
+
+    void checkLimit() throws IOException {
+        if ((memoryLimit > 0 && run.bytes() >= memoryLimit) || run.isFull()) {
+            spill();
+        }
+    }
+
+    // メモリ上のランをソートして一時ファイルに書き出す
+    void spill() throws IOException {
+        if (run.size() == 0) {
+            return;
+        }
+        run.sort();
+        File file = createRunFile();
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+        for (int i = 0; i < run.size(); i++) {
+            writeEntry(out, run.reading(i), run.cost(i), run.surface(i));
+        }
+        out.close();
+        runFiles.add(file);
+        run = new EntryArena();
+    }
+
+    File createRunFile() throws IOException {
+        File file = File.createTempFile("gendic", ".run", tempDir);
+        file.deleteOnExit();
+        return file;
+    }
+
+    static void writeEntry(DataOutputStream out, String reading, int cost, String surface)
+            throws IOException {
+        out.writeUTF(reading);
+        out.writeShort(cost);
+        out.writeUTF(surface);
+    }
+
+    // ランが多すぎる場合は先頭からまとめて一つのランにする
+    void mergeRuns() throws IOException {
+        List<File> files = new ArrayList<>(runFiles.subList(0, MAX_FAN_IN));
+        File file = createRunFile();
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+        Cursor cursor = new MergeCursor(files);
+        while (cursor.next()) {
+            writeEntry(out, cursor.reading(), cursor.cost(), cursor.surface());
+        }
+        out.close();
+        for (File f : files) {
+            f.delete();
+        }
+        runFiles.subList(0, MAX_FAN_IN).clear();
+        runFiles.add(file);
+    }
+
+    int runCount() {
+        return runFiles.size();
+    }
+
+    // 一時ファイルを削除する
+    void close() {
+        for (File file : runFiles) {
+            file.delete();
+        }
+        runFiles.clear();
+    }
+
+    // (読み, コスト, 表記)の順に重複なく読み出す
+    Cursor cursor() throws IOException {
+        if (runFiles.isEmpty()) {
+            run.sort();
+            return new ArenaCursor(run);
+        }
+        spill();
+        while (runFiles.size() > MAX_FAN_IN) {
+            mergeRuns();
+        }
+        return new MergeCursor(runFiles);
+    }
+
+    // メモリ上のソート済みEntryArenaを読み出す
+    static class ArenaCursor implements Cursor {
+        final EntryArena arena;
+        int index = -1;
+        int readingId = -1;
+        String reading;
+
+        ArenaCursor(EntryArena arena) {
+            this.arena = arena;
+        }
+
+        @Override
+        public boolean next() {
+            index++;
+            if (index >= arena.size()) {
+                return false;
+            }
+            // 同じ読みが続く間は同じStringを返す
+            int id = arena.readingId(index);
+            if (id != readingId) {
+                readingId = id;
+                reading = arena.readings.get(id);
+            }
+            return true;
+        }
+
+        @Override
+        public String reading() {
+            return reading;
+        }
+
+        @Override
+        public int cost() {
+            return arena.cost(index);
+        }
+
+        @Override
+        public String surface() {
+            return arena.surface(index);
+        }
+    }
+
+    // ソート済みのランファイルをk-wayマージし、重複を除いて読み出す
+    static class MergeCursor implements Cursor {
+
+        static class Head implements Comparable<Head> {
+            final DataInputStream in;
+            String reading;
+            int cost;
+            String surface;
+
+            Head(DataInputStream in) {
+                this.in = in;
+            }
+
+            boolean read() throws IOException {
+                try {
+                    reading = in.readUTF();
+                } catch (EOFException e) {
+                    in.close();
+                    return false;
+                }
+                cost = in.readShort();
+                surface = in.readUTF();
+                return true;
+            }
+
+            @Override
+            public int compareTo(Head o) {
+                return compare(reading, cost, surface, o.reading, o.cost, o.surface);
+            }
+        }
+
+        final PriorityQueue<Head> queue = new PriorityQueue<>();
+        String reading;
+        int cost;
+        String surface;
+
+        MergeCursor(List<File> files) throws IOException {
+            for (File file : files) {
+                Head head = new Head(new DataInputStream(
+                        new BufferedInputStream(new FileInputStream(file))));
+                if (head.read()) {
+                    queue.add(head);
+                }
+            }
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            while (true) {
+                Head head = queue.poll();
+                if (head == null) {
+                    return false;
+                }
+                boolean duplicate = reading != null
+                        && compare(reading, cost, surface, head.reading, head.cost, head.surface) == 0;
+                if (!duplicate) {
+                    // 同じ読みが続く間は同じStringを返す
+                    if (!head.reading.equals(reading)) {
+                        reading = head.reading;
+                    }
+                    cost = head.cost;
+                    surface = head.surface;
+                }
+                if (head.read()) {
+                    queue.add(head);
+                }
+                if (!duplicate) {
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public String reading() {
+            return reading;
+        }
+
+        @Override
+        public int cost() {
+            return cost;
+        }
+
+        @Override
+        public String surface() {
+            return surface;
+        }
+    }
+
+    static int compare(String reading1, int cost1, String surface1, String reading2, int cost2,
+            String surface2) {
+        int c = reading1.compareTo(reading2);
+        if (c != 0) {
+            return c;
+        }
+        c = Integer.compare(cost1, cost2);
+        if (c != 0) {
+            return c;
+        }
+        return surface1.compareTo(surface2);
+    }
+}
@@ -4,26 +4,36 @@
  * 
  * https://dumps.wikimedia.org/jawiki/latest/jawiki-latest-pages-articles.xml.bz2
  * を展開して./data/ディレクトリに置き、実行する。
+ * --bz2を指定すれば展開せずに.bz2のまま、--multistreamを指定すればmultistream版と索引を
+ * ./data/に置いて読める。
  * 
  *「の一覧」のような文字列の内容による取捨選択はここではおこなわない。
  * カタカナ語を別扱いできるように「読み」のカタカナはひらがなに変換していない。
  */
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.regex.Pattern;
 
 public class ExtractWikipediaWord {
 
     static Set<String> setWord = new TreeSet<>(); // 表記でソート、重複なし
     static BufferedWriter bwTest;
 
+    // 行ごとにコンパイルしないよう区切りの正規表現は一度だけコンパイルする
+    static final Pattern SPLIT_BOLD_PAREN = Pattern.compile("'''（");
+    static final Pattern SPLIT_READINGS = Pattern.compile("、|,|／|/");
+    static final Pattern SPLIT_YOMIGANA = Pattern.compile("\\{\\{読み仮名[^|]*\\|");
+    static final Pattern SPLIT_BOLD_BAR = Pattern.compile("'''\\|");
+    // --mmap指定時にバイト列のまま探す行の目印。handleLineで処理する行は必ずどちらかを含む
+    static final BytePatterns MARKERS = new BytePatterns("'''（", "{{読み仮名");
+
     static boolean isReadingFirstChar(char ch) {
         if (ch >= 'ァ' && ch <= 'ヶ') {
             return true;
@@ -73,21 +83,21 @@ public class ExtractWikipediaWord {
     }
 
     // 複数の語句がある場合の区切りに"・"が使われているので"・"は読みや表記に含められない
-    static void addWord(String reading, String surface) throws IOException {
+    static void addWord(String reading, String surface, Set<String> words) throws IOException {
         reading = reading.strip();
         surface = surface.strip();
 
         if (reading.length() == 0 || surface.length() == 0) {
             return;
         }
-        if (!reading.matches("^[ぁ-ゖァ-ヶー]+$")) {
+        if (!CharClass.isAllKana(reading)) {
             return;
         }
 
         if (surface.indexOf('・') >= 0) {
             return;
         }
-        if (!surface.matches("^[\\p{InHiragana}\\p{InKatakana}\\p{InCJKunifiedideographs}々]+$")) {
+        if (!CharClass.isAllKanaKanji(surface)) {
             return;
         }
 
@@ -107,42 +117,23 @@ public class ExtractWikipediaWord {
         }
 
         // 表記が漢字以外を含む場合
-        if (!surface.matches("^[\\p{InCJKunifiedideographs}々]+$")) {
+        if (!CharClass.isAllKanji(surface)) {
             // 表記のかなが読みにすべて含まれているか
-            String surfacePattern = surface.replaceAll("[\\p{InCJKunifiedideographs}々ゝゞ]+", ".*");
-
-            // 一旦カタカナにして正規表現に書き換える
-            surfacePattern = toWideKatakana(surfacePattern);
-
-            surfacePattern = surfacePattern.replace("ッ", "[っ|つ]");
-            surfacePattern = surfacePattern.replace("ツ", "[っ|つ]");
-            surfacePattern = surfacePattern.replace("ヤ", "[や|ゃ]");
-            surfacePattern = surfacePattern.replace("ヵ", "[か|が]");
-            surfacePattern = surfacePattern.replace("ヶ", "[ゖ|け|か|が]");
-            surfacePattern = surfacePattern.replace("ケ", "[ゖ|け|か|が]");
-            surfacePattern = surfacePattern.replace("ヰ", "[ゐ|い]");
-            surfacePattern = surfacePattern.replace("ヱ", "[ゑ|え]");
-            surfacePattern = surfacePattern.replace("ヲ", "[を|お]");
-
-            // 書き換えたものを全てひらがなにする
-            surfacePattern = toWideHiragana(surfacePattern);
-
-            String readingHiragana = toWideHiragana(reading);
-            if (!readingHiragana.matches(surfacePattern)) {
+            if (!KanaAligner.matches(surface, toWideHiragana(reading))) {
                 return;
             }
         }
 
         // 登録
-        setWord.add(surface + "\t" + reading);
+        words.add(surface + "\t" + reading);
     }
 
-    static void parseLine(String line) throws IOException {
+    static void parseLine(String line, Set<String> words) throws IOException {
 
         String[] ss;
         int index;
         // 「～'''（～」に対する処理
-        ss = line.split("'''（");
+        ss = SPLIT_BOLD_PAREN.split(line);
         if (ss.length >= 2) {
             for (int i = 0; i < ss.length - 1; i++) {
                 String left = ss[i].strip();
@@ -167,17 +158,17 @@ public class ExtractWikipediaWord {
                 }
                 right = right.substring(0, index).strip();
                 // 複数の読みがあれば分割
-                String[] readings = right.split("、|,|／|/");
+                String[] readings = SPLIT_READINGS.split(right);
                 for (String reading : readings) {
-                    addWord(reading, surface);
+                    addWord(reading, surface, words);
                 }
             }
         }
         // 「{{読み仮名～}}」に対する処理
-        ss = line.split("\\{\\{読み仮名[^|]*\\|");
+        ss = SPLIT_YOMIGANA.split(line);
         if (ss.length >= 2) {
             for (int i = 0; i < ss.length - 1; i++) {
-                String[] ss2 = ss[i + 1].split("'''\\|");
+                String[] ss2 = SPLIT_BOLD_BAR.split(ss[i + 1]);
                 if (ss2.length < 2) {
                     continue;
                 }
@@ -203,7 +194,7 @@ public class ExtractWikipediaWord {
                 if (index >= 0) {
                     right = right.substring(0, index).strip();
                 }
-                index = right.indexOf('&');
+                index = WikipediaPages.indexOfMarkup(right);
                 if (index >= 0) {
                     right = right.substring(0, index).strip();
                 }
@@ -215,45 +206,136 @@ public class ExtractWikipediaWord {
                 if (index >= 0) {
                     right = right.substring(0, index).strip();
                 }
-                addWord(right, surface);
+                addWord(right, surface, words);
             }
         }
     }
 
+    // ダンプファイルの一行
+    static void handleLine(String line, Set<String> words) throws IOException {
+        line = line.strip();
+        if (line.length() == 0) {
+            return;
+        }
+        // 同じ行に混在する場合があるのでどちらかに一致すればまとめて処理する
+        if (line.contains("'''（") || line.contains("{{読み仮名")) {
+            parseLine(line, words);
+        }
+    }
+
     static public void main(String argv[]) throws Exception {
 
+        // --parallel指定時はダンプファイルを範囲に分けて並列に読む
+        boolean parallel = false;
+        // --mmap指定時はダンプファイルをメモリマップし、MARKERSを含む行だけを読む
+        boolean mmap = false;
+        // --bz2、--multistream指定時は圧縮されたダンプファイルを展開しながら読む
+        boolean bz2 = false;
+        boolean multistream = false;
+        // --pages指定時は記事の本文だけを読み、結果ごとに記事名を記録する
+        boolean pages = false;
+        // --checkpoint指定時は途中経過をディレクトリに保存し、--resumeでそこから再開する
+        File checkpointDir = null;
+        boolean resume = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < argv.length; i++) {
+            switch (argv[i]) {
+                case "--parallel":
+                    parallel = true;
+                    break;
+                case "--mmap":
+                    mmap = true;
+                    break;
+                case "--bz2":
+                    bz2 = true;
+                    break;
+                case "--multistream":
+                    multistream = true;
+                    break;
+                case "--pages":
+                    pages = true;
+                    break;
+                case "--checkpoint":
+                    checkpointDir = new File(argv[++i]);
+                    break;
+                case "--resume":
+                    resume = true;
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(argv[++i]);
+                    break;
+                default:
+                    System.err.println("不明なオプション: " + argv[i]);
+                    System.exit(1);
+            }
+        }
+
         // 動作確認出力用
         bwTest = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(
                 new File("test.txt")), "UTF-8"));
 
-        // ダンプファイル読み出し用
-        BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(
-                new File("data/jawiki-latest-pages-articles.xml")), "UTF-8"));
-
-        String line;
-        while ((line = br.readLine()) != null) {
-            line = line.strip();
-            if (line.length() == 0) {
-                continue;
-            }
-            // 同じ行に混在する場合があるのでどちらかに一致すればまとめて処理する
-            if (line.contains("'''（") || line.contains("{{読み仮名")) {
-                parseLine(line);
-            }
+        if (resume && checkpointDir == null) {
+            System.err.println("--resumeには--checkpointが必要");
+            System.exit(1);
+        }
+        if (checkpointDir != null && (parallel || mmap || bz2 || multistream || pages)) {
+            System.err.println("--checkpointは展開済みのダンプファイルを逐次処理する場合にだけ使える");
+            System.exit(1);
         }
 
-        br.close();
+        // 段階ごとの時間と処理した行の数。終了時にExtractWikipediaWord.metrics.jsonに書き出す
+        BuildMetrics metrics = new BuildMetrics("ExtractWikipediaWord");
+        DumpScanner.LineHandler handler = metrics.countLines("lines", ExtractWikipediaWord::handleLine);
+        metrics.stage("scan");
+
+        Map<String, String> titles = null;
+        Checkpoint checkpoint = null;
+        if (checkpointDir != null) {
+            checkpoint = resume ? Checkpoint.resume(checkpointDir) : Checkpoint.create(checkpointDir);
+            checkpoint.scan(DumpScanner.DUMP, handler);
+        } else if (pages) {
+            titles = new TreeMap<>();
+            WikipediaPages.extract(DumpScanner.open(bz2, multistream, threads), MARKERS, handler, setWord, titles);
+        } else if ((parallel || mmap) && !bz2 && !multistream) {
+            setWord = DumpScanner.scan(DumpScanner.DUMP, parallel ? threads : 1, mmap ? MARKERS : null, handler);
+        } else {
+            // ダンプファイル読み出し用
+            DumpScanner.readLines(DumpScanner.open(bz2, multistream, threads), handler, setWord);
+        }
 
         bwTest.flush();
         bwTest.close();
 
-        BufferedWriter bwWord = new BufferedWriter(
-                new OutputStreamWriter(new FileOutputStream(new File("WikipediaWord.txt")), "UTF-8"));
-        for (String set : setWord) {
-            bwWord.write(set + "\n");
+        metrics.count("scan", "lines", metrics.counter("lines"));
+
+        metrics.stage("write");
+        if (checkpoint != null) {
+            // ランをマージして出力する
+            checkpoint.merge(new File("WikipediaWord.txt"));
+        } else {
+            BufferedWriter bwWord = new BufferedWriter(
+                    new OutputStreamWriter(new FileOutputStream(new File("WikipediaWord.txt")), "UTF-8"));
+            for (String set : setWord) {
+                bwWord.write(set + "\n");
+            }
+            bwWord.flush();
+            bwWord.close();
+        }
+
+        if (titles != null) {
+            // 結果と最初に見つかった記事名
+            BufferedWriter bwTitle = new BufferedWriter(
+                    new OutputStreamWriter(new FileOutputStream(new File("WikipediaWordTitle.txt")), "UTF-8"));
+            for (Map.Entry<String, String> entry : titles.entrySet()) {
+                bwTitle.write(entry.getKey() + "\t" + entry.getValue() + "\n");
+            }
+            bwTitle.flush();
+            bwTitle.close();
+        }
+        if (checkpoint == null) {
+            metrics.count("write", "results", setWord.size());
         }
-        bwWord.flush();
-        bwWord.close();
+        metrics.write(new File("ExtractWikipediaWord.metrics.json"));
 
     }
 }
@@ -0,0 +1,64 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * ファイルを行の途中で切らないようにバイト範囲に分割する。
+ */
+public class FileChunks {
+
+    // 各範囲は{開始位置, 終了位置}。終了位置は改行の直後かファイル末尾
+    static List<long[]> split(File file, long chunkSize) throws IOException {
+        return split(file, 0, chunkSize);
+    }
+
+    // fromから末尾までを分割する。fromは行の先頭
+    static List<long[]> split(File file, long from, long chunkSize) throws IOException {
+        List<long[]> chunks = new ArrayList<>();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            long start = from;
+            byte[] buf = new byte[8192];
+            while (start < length) {
+                long end = start + chunkSize;
+                if (end >= length) {
+                    end = length;
+                } else {
+                    // 次の改行まで進める
+                    raf.seek(end);
+                    int n;
+                    boolean found = false;
+                    while (!found && (n = raf.read(buf)) > 0) {
+                        for (int i = 0; i < n; i++) {
+                            if (buf[i] == '\n') {
+                                end += i + 1;
+                                found = true;
+                                break;
+                            }
+                        }
+                        if (!found) {
+                            end += n;
+                        }
+                    }
+                    if (end > length) {
+                        end = length;
+                    }
+                }
+                chunks.add(new long[] { start, end });
+                start = end;
+            }
+        }
+        return chunks;
+    }
+
+    static byte[] read(File file, long start, long end) throws IOException {
+        byte[] bytes = new byte[(int) (end - start)];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(start);
+            raf.readFully(bytes);
+        }
+        return bytes;
+    }
+}
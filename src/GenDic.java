@@ -1,4 +1,5 @@
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
@@ -7,18 +8,20 @@ import java.io.InputStreamReader;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.lang.Character.UnicodeBlock;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
-import java.util.Properties;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
-import jdbm.btree.BTree;
-import jdbm.helper.StringComparator;
-import jdbm.RecordManager;
-import jdbm.RecordManagerFactory;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 public class GenDic {
     static String SYS_DIC_NAME = "system_dic";
@@ -54,288 +57,472 @@ public class GenDic {
         return sb.toString();
     }
 
-    static Set<String> listAll = new TreeSet<>();
+    static EntrySorter listAll;
     static ArrayList<String> listSkip = new ArrayList<>();
     static ArrayList<String> listLex = new ArrayList<>();
     static ArrayList<String> listSymbol = new ArrayList<>();
     static Set<String> setComplement = new LinkedHashSet<>();
 
+    // --parallel指定時は*_lex.csvをチャンクに分けて並列に処理する
+    static boolean parallel = false;
+    static int threads = Runtime.getRuntime().availableProcessors();
+    static final long LEX_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    // --memory指定時はエントリのソートに使うメモリをこの大きさに抑え、超えた分は一時ファイルに書き出す
+    static long memoryLimit = 0;
+    static File tempDir = null;
+
+    // --bulkload指定時はソート済みの読みからBTreeを一括で構築し、トランザクションも使わない
+    static boolean bulkLoad = false;
+
+    // --trie指定時は共通接頭辞検索用のダブル配列(system_dic.dat)も出力する
+    static boolean trie = false;
+    // --sstable指定時はブロック単位で前方一致圧縮した辞書(system_dic.sst)も出力する
+    static boolean sstable = false;
+    // --rankedまたは--topk指定時はBTreeの値をコスト付きの候補(CandidateCodec)にする
+    static boolean ranked = false;
+    // --topk K: BTreeの値には先頭のK件だけを入れ、残りはオーバーフロー用のBTreeに入れる
+    static int topK = 0;
+    // --pool指定時は表記を重複なくsystem_dic.poolに書き出し、BTreeとダブル配列には表記のIDを入れる
+    static boolean pool = false;
+    // --incremental指定時は入力が前回から変わっていなければ何もせず、変わっていれば既存のBTreeに違いだけを反映する
+    static boolean incremental = false;
+    // --shards N: BTreeを読みの先頭の文字でN個の範囲に分け、範囲ごとのファイル(system_dic-00.dbなど)に並行に書き出す
+    static int shards = 0;
+    // --predict N: 読みの先頭predictLength文字までの接頭辞ごとに、コストの小さい順にN件の予測候補をsystem_dic.predに書き出す
+    static int predictTopN = 0;
+    static int predictLength = 8;
+
+    // 段階ごとの時間と規則ごとの件数。終了時にGenDic.metrics.jsonに書き出す
+    static BuildMetrics metrics = new BuildMetrics("GenDic");
+
     static void readWikipediaYomigana(String filename) throws IOException {
         File file = new File(filename);
         FileInputStream fis = new FileInputStream(file);
         InputStreamReader isr = new InputStreamReader(fis, "UTF-8");
         BufferedReader br = new BufferedReader(isr);
         String line;
+        long rows = 0;
         while ((line = br.readLine()) != null) {
+            // 三列目はWikipediaYomigana --costsで出現回数から決めたコスト
             String[] data = line.split("\t");
-            if (data.length != 2) {
+            if (data.length != 2 && data.length != 3) {
                 continue;
             }
+            rows++;
             String reading = toWideHiragana(data[0]).strip();
             String surface = data[1].strip();
             int cost = 9000;   // Sudachiのユーザ辞書での名詞のコストは5000～9000を推奨している
-            cost += 32768; // 文字列としてソートするため5桁にする
-            String entry = reading + "\t" + cost + "\t" + surface;
-            listAll.add(entry);
+            if (data.length == 3) {
+                cost = Integer.parseInt(data[2].strip());
+            }
+            listAll.add(reading, cost, surface);
         }
         br.close();
+        metrics.add("wikipedia.rows", rows);
     }
 
-    static void readLex(String filename) throws IOException {
-        File file = new File(filename);
-        FileInputStream fis = new FileInputStream(file);
-        InputStreamReader isr = new InputStreamReader(fis, "UTF-8");
-        BufferedReader br = new BufferedReader(isr);
-        String line;
-        while ((line = br.readLine()) != null) {
-            String[] data = line.split(",");
-            String reading = toWideHiragana(unescape(data[11]));
-            int cost = Integer.parseInt(data[3]);
-            // 固有名詞-人名-名などのcostが10000のものは他の候補に比べておかしい
-            if (cost <= 0 || cost == 10000) {
-                cost = 20000;
-            }
-            cost += 32768; // 文字列としてソートするため5桁にする
-            String surface = unescape(data[4]);
-            String entry = reading + "\t" + cost + "\t" + surface;
+    // skip.txtとsymbol.txtの行。以前の出力と比較できるよう、コストは従来どおり5桁にする
+    static String sideEntry(String reading, int cost, String surface) {
+        return reading + "\t" + (cost + 32768) + "\t" + surface;
+    }
 
-            if (data[5].equals("感動詞")) {
-                listSkip.add(entry);
-                continue;
-            }
-            // アスキーアートはスキップ
-            if (data[6].equals("ＡＡ")) {
-                listSkip.add(entry);
-                continue;
-            }
-            // 分割タイプがCの名詞はスキップ
-            if (data[5].equals("名詞") && data[14].equals("C")) {
-                listSkip.add(entry);
-                continue;
+    static void processLexLine(LexRow row, LexBuffer buf) throws IOException {
+        buf.count(LexBuffer.Counter.ROWS);
+        String reading = row.unescape(11, true);
+        int cost = row.parseInt(3);
+        // 固有名詞-人名-名などのcostが10000のものは他の候補に比べておかしい
+        if (cost <= 0 || cost == 10000) {
+            cost = 20000;
+        }
+        String surface = row.unescape(4, false);
+
+        if (row.get(5).equals("感動詞")) {
+            buf.count(LexBuffer.Counter.SKIP_INTERJECTION);
+            buf.skip.add(sideEntry(reading, cost, surface));
+            return;
+        }
+        // アスキーアートはスキップ
+        if (row.get(6).equals("ＡＡ")) {
+            buf.count(LexBuffer.Counter.SKIP_ASCII_ART);
+            buf.skip.add(sideEntry(reading, cost, surface));
+            return;
+        }
+        // 分割タイプがCの名詞はスキップ
+        if (row.get(5).equals("名詞") && row.get(14).equals("C")) {
+            buf.count(LexBuffer.Counter.SKIP_SPLIT_C);
+            buf.skip.add(sideEntry(reading, cost, surface));
+            return;
+        }
+        // 読みが平仮名以外の文字を含むものはスキップ
+        if (!CharClass.isAllHiragana(reading)) {
+            buf.count(LexBuffer.Counter.SKIP_READING_NOT_HIRAGANA);
+            buf.skip.add(sideEntry(reading, cost, surface));
+            return;
+        }
+
+        if (row.get(5).equals("記号") || row.get(5).equals("補助記号")) {
+            if (!reading.equals("きごう")) {
+                buf.count(LexBuffer.Counter.SYMBOL);
+                buf.addEntry(reading, cost, surface);
+                return;
             }
-            // 読みが平仮名以外の文字を含むものはスキップ
-            if (!reading.matches("^[ぁ-ゖー]+$")) {
-                listSkip.add(entry);
-                continue;
+            UnicodeBlock block = UnicodeBlock.of(surface.charAt(0));
+            if (block.equals(UnicodeBlock.HIGH_SURROGATES)) {
+                buf.count(LexBuffer.Counter.SYMBOL_SURROGATE);
+                buf.addEntry(reading, cost, surface);
+                return;
             }
+            buf.count(LexBuffer.Counter.SYMBOL_KIGOU);
+            buf.symbol.add(block.toString() + "\t" + sideEntry(reading, cost, surface) + "\t" + row.line());
+            // System.err.println(line + " : " + block.toString());
+        }
 
-            if (data[5].equals("記号") || data[5].equals("補助記号")) {
-                if (!reading.equals("きごう")) {
-                    listAll.add(entry);
-                    continue;
-                }
-                UnicodeBlock block = UnicodeBlock.of(surface.charAt(0));
-                if (block.equals(UnicodeBlock.HIGH_SURROGATES)) {
-                    listAll.add(entry);
-                    continue;
-                }
-                listSymbol.add(block.toString() + "\t" + entry + "\t" + line);
-                // System.err.println(line + " : " + block.toString());
-            }
+        // 表記にかな漢字以外が含まれているものはスキップ
+        if (!CharClass.isAllKanaKanji(surface)) {
+            buf.count(LexBuffer.Counter.SKIP_SURFACE_NOT_KANA_KANJI);
+            buf.skip.add(sideEntry(reading, cost, surface));
+            return;
+        }
 
-            // 表記にかな漢字以外が含まれているものはスキップ
-            if (!surface
-                    .matches("^[\\p{InHiragana}\\p{InKatakana}\\p{InCJKunifiedideographs}々]+$")) {
-                listSkip.add(entry);
-                continue;
-            }
+        // 採用した*_lex.csv内の行
+        buf.count(LexBuffer.Counter.ADOPTED);
+        buf.lex.add(row.line());
 
-            // 採用した*_lex.csv内の行
-            listLex.add(line);
-
-            // 語尾の補完
-
-            // 「来」
-            if (data[9].contains("カ行変格")) {
-                listAll.add(entry);
-                switch (data[10]) {
-                    case "連用形-一般": // 「き」
-                        entry = reading + "た\t" + cost + "\t" + surface + "た";
-                        listAll.add(entry);
-                        entry = reading + "て\t" + cost + "\t" + surface + "て";
-                        listAll.add(entry);
-                        continue;
-                    case "未然形-一般": // 「こ」
-                        entry = reading + "ない\t" + cost + "\t" + surface + "ない";
-                        listAll.add(entry);
-                        entry = reading + "ず\t" + cost + "\t" + surface + "ず";
-                        listAll.add(entry);
-                        continue;
-                }
-                continue;
+        // 語尾の補完
+
+        // 「来」
+        if (row.get(9).contains("カ行変格")) {
+            buf.count(LexBuffer.Counter.EXPAND_KA_IRREGULAR, row.get(10));
+            buf.addEntry(reading, cost, surface);
+            switch (row.get(10)) {
+                case "連用形-一般": // 「き」
+                    buf.addEntry(reading, "た", cost, surface, "た");
+                    buf.addEntry(reading, "て", cost, surface, "て");
+                    return;
+                case "未然形-一般": // 「こ」
+                    buf.addEntry(reading, "ない", cost, surface, "ない");
+                    buf.addEntry(reading, "ず", cost, surface, "ず");
+                    return;
             }
-            if (data[9].contains("サ行変格")) {
-                listAll.add(entry);
-                switch (data[10]) {
-                    case "連用形-一般":
-                        entry = reading + "た\t" + cost + "\t" + surface + "た";
-                        listAll.add(entry);
-                        entry = reading + "て\t" + cost + "\t" + surface + "て";
-                        listAll.add(entry);
-                        continue;
-                }
-                // setComplement.add(line);
-                continue;
+            return;
+        }
+        if (row.get(9).contains("サ行変格")) {
+            buf.count(LexBuffer.Counter.EXPAND_SA_IRREGULAR, row.get(10));
+            buf.addEntry(reading, cost, surface);
+            switch (row.get(10)) {
+                case "連用形-一般":
+                    buf.addEntry(reading, "た", cost, surface, "た");
+                    buf.addEntry(reading, "て", cost, surface, "て");
+                    return;
             }
-            if (reading.endsWith("っ") && surface.endsWith("っ")) {
-                switch (data[5]) {
-                    case "名詞":
-                    case "代名詞":
-                    case "接頭辞":
-                    case "形状詞":
-                        listSkip.add(entry);
-                        continue;
-                    case "動詞":
-                        switch (data[10]) {
-                            case "意志推量形":
-                                listAll.add(entry);
-                                entry = reading + "と\t" + cost + "\t" + surface + "と";
-                                listAll.add(entry);
-                                break;
-                            case "連用形-促音便":
-                                entry = reading + "た\t" + cost + "\t" + surface + "た";
-                                listAll.add(entry);
-                                entry = reading + "て\t" + cost + "\t" + surface + "て";
-                                listAll.add(entry);
-                                break;
-                            default:
-                                listSkip.add(entry);
-                                // System.out.println(line);
-                                break;
-                        }
-                        continue;
-                    case "助動詞":
-                        entry = reading + "た\t" + cost + "\t" + surface + "た";
-                        listAll.add(entry);
-                        entry = reading + "て\t" + cost + "\t" + surface + "て";
-                        listAll.add(entry);
-                        continue;
-                    case "形容詞":
-                        entry = reading + "た\t" + cost + "\t" + surface + "た";
-                        listAll.add(entry);
-                        continue;
-                    case "接尾辞":
-                        switch (data[6]) {
-                            case "動詞的":
-                                entry = reading + "て\t" + cost + "\t" + surface + "て";
-                                listAll.add(entry);
-                                entry = reading + "た\t" + cost + "\t" + surface + "た";
-                                listAll.add(entry);
-                                break;
-                            case "形容詞的":
-                                entry = reading + "た\t" + cost + "\t" + surface + "た";
-                                listAll.add(entry);
-                                break;
-                            case "名詞的":
-                                listAll.add(entry);
-                                break;
-                            default:
-                                listSkip.add(entry);
-                                break;
-                        }
-                        continue;
-                    case "副詞":
-                        listAll.add(entry);
-                        entry = reading + "と\t" + cost + "\t" + surface + "と";
-                        listAll.add(entry);
-                        continue;
-                    case "感動詞":
-                        listAll.add(entry);
-                        continue;
-                    default:
-                        break;
-                }
-                setComplement.add(line);
-                continue;
+            // buf.complement.add(line);
+            return;
+        }
+        if (reading.endsWith("っ") && surface.endsWith("っ")) {
+            buf.count(LexBuffer.Counter.EXPAND_SOKUON, row.get(5));
+            switch (row.get(5)) {
+                case "名詞":
+                case "代名詞":
+                case "接頭辞":
+                case "形状詞":
+                    buf.count(LexBuffer.Counter.SKIP_SOKUON);
+                    buf.skip.add(sideEntry(reading, cost, surface));
+                    return;
+                case "動詞":
+                    switch (row.get(10)) {
+                        case "意志推量形":
+                            buf.addEntry(reading, cost, surface);
+                            buf.addEntry(reading, "と", cost, surface, "と");
+                            break;
+                        case "連用形-促音便":
+                            buf.addEntry(reading, "た", cost, surface, "た");
+                            buf.addEntry(reading, "て", cost, surface, "て");
+                            break;
+                        default:
+                            buf.count(LexBuffer.Counter.SKIP_SOKUON);
+                            buf.skip.add(sideEntry(reading, cost, surface));
+                            // System.out.println(line);
+                            break;
+                    }
+                    return;
+                case "助動詞":
+                    buf.addEntry(reading, "た", cost, surface, "た");
+                    buf.addEntry(reading, "て", cost, surface, "て");
+                    return;
+                case "形容詞":
+                    buf.addEntry(reading, "た", cost, surface, "た");
+                    return;
+                case "接尾辞":
+                    switch (row.get(6)) {
+                        case "動詞的":
+                            buf.addEntry(reading, "て", cost, surface, "て");
+                            buf.addEntry(reading, "た", cost, surface, "た");
+                            break;
+                        case "形容詞的":
+                            buf.addEntry(reading, "た", cost, surface, "た");
+                            break;
+                        case "名詞的":
+                            buf.addEntry(reading, cost, surface);
+                            break;
+                        default:
+                            buf.count(LexBuffer.Counter.SKIP_SOKUON);
+                            buf.skip.add(sideEntry(reading, cost, surface));
+                            break;
+                    }
+                    return;
+                case "副詞":
+                    buf.addEntry(reading, cost, surface);
+                    buf.addEntry(reading, "と", cost, surface, "と");
+                    return;
+                case "感動詞":
+                    buf.addEntry(reading, cost, surface);
+                    return;
+                default:
+                    break;
             }
-            if (data[10].equals("未然形-一般")) {
-                switch (data[5]) {
-                    case "動詞":
-                        entry = reading + "ない\t" + cost + "\t" + surface + "ない";
-                        listAll.add(entry);
-                        entry = reading + "ず\t" + cost + "\t" + surface + "ず";
-                        listAll.add(entry);
-                        continue;
-                    case "形容詞":
-                        listAll.add(entry);
-                        entry = reading + "ない\t" + cost + "\t" + surface + "ない";
-                        listAll.add(entry);
-                        continue;
-                    default:
-                        // TODO:接尾辞、助動詞
-                        // setComplement.add(line);
-                        break;
-                }
+            buf.count(LexBuffer.Counter.COMPLEMENT_SOKUON);
+            buf.complement.add(row.line());
+            return;
+        }
+        if (row.get(10).equals("未然形-一般")) {
+            switch (row.get(5)) {
+                case "動詞":
+                    buf.count(LexBuffer.Counter.EXPAND_IRREALIS_VERB);
+                    buf.addEntry(reading, "ない", cost, surface, "ない");
+                    buf.addEntry(reading, "ず", cost, surface, "ず");
+                    return;
+                case "形容詞":
+                    buf.count(LexBuffer.Counter.EXPAND_IRREALIS_ADJECTIVE);
+                    buf.addEntry(reading, cost, surface);
+                    buf.addEntry(reading, "ない", cost, surface, "ない");
+                    return;
+                default:
+                    // TODO:接尾辞、助動詞
+                    // buf.complement.add(line);
+                    break;
             }
-            if (data[10].equals("仮定形-一般")) {
-                switch (data[5]) {
-                    case "動詞":
-                    case "形容詞":
-                        listAll.add(entry);
-                        entry = reading + "ば\t" + cost + "\t" + surface + "ば";
-                        listAll.add(entry);
-                        continue;
-                    default:
-                        // TODO:接尾辞、助動詞
-                        // setComplement.add(line);
-                        break;
-                }
+        }
+        if (row.get(10).equals("仮定形-一般")) {
+            switch (row.get(5)) {
+                case "動詞":
+                case "形容詞":
+                    buf.count(LexBuffer.Counter.EXPAND_HYPOTHETICAL, row.get(5));
+                    buf.addEntry(reading, cost, surface);
+                    buf.addEntry(reading, "ば", cost, surface, "ば");
+                    return;
+                default:
+                    // TODO:接尾辞、助動詞
+                    // buf.complement.add(line);
+                    break;
+            }
+        }
+        if (row.get(10).equals("連用形-一般")) {
+            buf.addEntry(reading, cost, surface);
+            // 「見た」等
+            if (row.get(9).contains("上一段")) {
+                buf.count(LexBuffer.Counter.EXPAND_CONTINUATIVE_KAMI_ICHIDAN);
+                buf.addEntry(reading, "よう", cost, surface, "よう");
+                buf.addEntry(reading, "ない", cost, surface, "ない");
+                buf.addEntry(reading, "る", cost, surface, "る");
+                buf.addEntry(reading, "た", cost, surface, "た");
+                buf.addEntry(reading, "て", cost, surface, "て");
+                buf.addEntry(reading, "れ", cost, surface, "れ");
+                buf.addEntry(reading, "ろ", cost, surface, "ろ");
+                return;
+            }
+            // 「得た」等
+            if (row.get(9).contains("下一段")) {
+                buf.count(LexBuffer.Counter.EXPAND_CONTINUATIVE_SHIMO_ICHIDAN);
+                buf.addEntry(reading, "ない", cost, surface, "ない");
+                buf.addEntry(reading, "ぬ", cost, surface, "ぬ");
+                buf.addEntry(reading, "ず", cost, surface, "ず");
+                buf.addEntry(reading, "た", cost, surface, "た");
+                buf.addEntry(reading, "て", cost, surface, "て");
+                return;
             }
-            if (data[10].equals("連用形-一般")) {
-                listAll.add(entry);
-                // 「見た」等
-                if (data[9].contains("上一段")) {
-                    entry = reading + "よう\t" + cost + "\t" + surface + "よう";
-                    listAll.add(entry);
-                    entry = reading + "ない\t" + cost + "\t" + surface + "ない";
-                    listAll.add(entry);
-                    entry = reading + "る\t" + cost + "\t" + surface + "る";
-                    listAll.add(entry);
-                    entry = reading + "た\t" + cost + "\t" + surface + "た";
-                    listAll.add(entry);
-                    entry = reading + "て\t" + cost + "\t" + surface + "て";
-                    listAll.add(entry);
-                    entry = reading + "れ\t" + cost + "\t" + surface + "れ";
-                    listAll.add(entry);
-                    entry = reading + "ろ\t" + cost + "\t" + surface + "ろ";
-                    listAll.add(entry);
-                    continue;
-                }
-                // 「得た」等
-                if (data[9].contains("下一段")) {
-                    entry = reading + "ない\t" + cost + "\t" + surface + "ない";
-                    listAll.add(entry);
-                    entry = reading + "ぬ\t" + cost + "\t" + surface + "ぬ";
-                    listAll.add(entry);
-                    entry = reading + "ず\t" + cost + "\t" + surface + "ず";
-                    listAll.add(entry);
-                    entry = reading + "た\t" + cost + "\t" + surface + "た";
-                    listAll.add(entry);
-                    entry = reading + "て\t" + cost + "\t" + surface + "て";
-                    listAll.add(entry);
-                    continue;
-                }
 
-                continue;
+            buf.count(LexBuffer.Counter.EXPAND_CONTINUATIVE);
+            return;
+        }
+        buf.count(LexBuffer.Counter.EXPAND_NONE);
+        buf.addEntry(reading, cost, surface);
+    }
+
+    static void readLex(String filename) throws IOException {
+        File file = new File(filename);
+        FileInputStream fis = new FileInputStream(file);
+        InputStreamReader isr = new InputStreamReader(fis, "UTF-8");
+        LexRow row = new LexRow(isr);
+        LexBuffer buf = new LexBuffer(listAll, listSkip, listLex, listSymbol, setComplement);
+        while (row.next()) {
+            processLexLine(row, buf);
+        }
+        buf.mergeCounts(metrics);
+        isr.close();
+    }
+
+    // 改行位置で区切ったチャンクごとにローカルバッファへ処理し、ファイル内の順序で統合する
+    static void readLexParallel(String filename, ForkJoinPool forkJoinPool) throws IOException {
+        File file = new File(filename);
+        List<ForkJoinTask<LexBuffer>> tasks = new ArrayList<>();
+        for (long[] chunk : FileChunks.split(file, LEX_CHUNK_SIZE)) {
+            tasks.add(forkJoinPool.submit(() -> readLexChunk(file, chunk[0], chunk[1])));
+        }
+        for (ForkJoinTask<LexBuffer> task : tasks) {
+            try {
+                mergeLexBuffer(task.get());
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
             }
-            listAll.add(entry);
         }
-        br.close();
+    }
+
+    static LexBuffer readLexChunk(File file, long start, long end) throws IOException {
+        byte[] bytes = FileChunks.read(file, start, end);
+        LexRow row = new LexRow(new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8));
+        LexBuffer buf = new LexBuffer();
+        while (row.next()) {
+            processLexLine(row, buf);
+        }
+        return buf;
+    }
+
+    // setComplementの挿入順を保つためチャンクの順に呼び出すこと
+    static void mergeLexBuffer(LexBuffer buf) throws IOException {
+        buf.mergeCounts(metrics);
+        listAll.addAll(buf.entries);
+        listSkip.addAll(buf.skip);
+        listLex.addAll(buf.lex);
+        listSymbol.addAll(buf.symbol);
+        setComplement.addAll(buf.complement);
+    }
+
+    static void writeCandidates(List<DicWriter> writers, String reading, Map<String, Integer> values)
+            throws IOException {
+        String[] surfaces = new String[values.size()];
+        int[] costs = new int[values.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> value : values.entrySet()) {
+            surfaces[i] = value.getKey();
+            costs[i] = value.getValue();
+            i++;
+        }
+        for (DicWriter writer : writers) {
+            writer.add(reading, surfaces, costs);
+        }
     }
 
     static public void main(String argv[]) throws Exception {
 
-        RecordManager recman;
-        BTree tree;
-        Properties props;
+        for (int i = 0; i < argv.length; i++) {
+            switch (argv[i]) {
+                case "--parallel":
+                    parallel = true;
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(argv[++i]);
+                    break;
+                case "--memory":
+                    memoryLimit = Long.parseLong(argv[++i]) * 1024 * 1024;
+                    break;
+                case "--tmpdir":
+                    tempDir = new File(argv[++i]);
+                    break;
+                case "--bulkload":
+                    bulkLoad = true;
+                    break;
+                case "--trie":
+                    trie = true;
+                    break;
+                case "--sstable":
+                    sstable = true;
+                    break;
+                case "--ranked":
+                    ranked = true;
+                    break;
+                case "--topk":
+                    topK = Integer.parseInt(argv[++i]);
+                    ranked = true;
+                    break;
+                case "--pool":
+                    pool = true;
+                    break;
+                case "--incremental":
+                    incremental = true;
+                    break;
+                case "--shards":
+                    shards = Integer.parseInt(argv[++i]);
+                    break;
+                case "--predict":
+                    predictTopN = Integer.parseInt(argv[++i]);
+                    break;
+                case "--predict-length":
+                    predictLength = Integer.parseInt(argv[++i]);
+                    break;
+                default:
+                    System.err.println("不明なオプション: " + argv[i]);
+                    System.exit(1);
+            }
+        }
 
-        props = new Properties();
+        metrics.stage("fingerprint");
+        String[] lexFiles = { "./data/small_lex.csv", "./data/core_lex.csv", "./data/notcore_lex.csv" };
+        String wikipediaYomigana = "./data/WikipediaYomigana.txt";
 
-        readLex("./data/small_lex.csv");
-        readLex("./data/core_lex.csv");
-        readLex("./data/notcore_lex.csv");
-        readWikipediaYomigana("./data/WikipediaYomigana.txt");
+        // 入力と出力の形式が前回と同じか調べる
+        File textFile = new File(SYS_DIC_NAME + ".txt");
+        File manifestFile = new File(SYS_DIC_NAME + ".manifest");
+        String[] inputs = Arrays.copyOf(lexFiles, lexFiles.length + 1);
+        inputs[lexFiles.length] = wikipediaYomigana;
+        DicManifest manifest = DicManifest.of(inputs,
+                "ranked=" + ranked + " topk=" + topK + " pool=" + pool + " trie=" + trie + " sstable=" + sstable
+                        + " shards=" + shards + " predict=" + predictTopN + "/" + predictLength);
+        boolean update = false;
+        if (incremental) {
+            DicManifest previous = DicManifest.read(manifestFile);
+            if (previous != null && previous.sameOptions(manifest) && textFile.exists()
+                    && new File(SYS_DIC_NAME + (shards > 0 ? ShardedDicWriter.ROUTING_SUFFIX : ".db")).exists()) {
+                List<String> changed = manifest.changedInputs(previous);
+                if (changed.isEmpty()) {
+                    System.err.println("入力は前回から変わっていない");
+                    metrics.write(new File("GenDic.metrics.json"));
+                    return;
+                }
+                System.err.println("変更された入力: " + String.join(", ", changed));
+                // 表記のIDやコストを詰めた値は前回のsystem_dic.txtからは比べられないので作り直す
+                update = !ranked && !pool && shards == 0;
+            }
+        }
+        // 途中で止まった出力を次の--incrementalで使わないよう、書き終えるまでは消しておく
+        Files.deleteIfExists(manifestFile.toPath());
+
+        listAll = new EntrySorter(memoryLimit, tempDir);
+
+        // 行ごとに読み込み、除外の規則と語尾の補完を続けて行うので、規則ごとの内訳はカウンタで見る
+        metrics.stage("read-lex");
+        if (parallel) {
+            ForkJoinPool forkJoinPool = new ForkJoinPool(threads);
+            for (String lexFile : lexFiles) {
+                readLexParallel(lexFile, forkJoinPool);
+            }
+            forkJoinPool.shutdown();
+        } else {
+            for (String lexFile : lexFiles) {
+                readLex(lexFile);
+            }
+        }
+        metrics.count("read-lex", "rows", metrics.counter("lex.rows"));
+        metrics.stage("read-wikipedia");
+        readWikipediaYomigana(wikipediaYomigana);
+        metrics.count("read-wikipedia", "rows", metrics.counter("wikipedia.rows"));
 
+        metrics.stage("write-side-files");
         BufferedWriter bwComplement = new BufferedWriter(
                 new OutputStreamWriter(new FileOutputStream(new File("complement.csv")), "UTF-8"));
         for (String list : setComplement) {
@@ -368,57 +555,73 @@ public class GenDic {
         bwSkip.close();
 
         // listAll.sort(Comparator.naturalOrder());
+        metrics.stage("sort");
+        EntrySorter.Cursor cursor = listAll.cursor();
 
-        File f = new File(SYS_DIC_NAME + ".txt");
-        OutputStreamWriter osw = new OutputStreamWriter(new FileOutputStream(f), "UTF-8");
-        BufferedWriter bw = new BufferedWriter(osw);
-
-        Files.deleteIfExists(Paths.get(SYS_DIC_NAME + ".db"));
-        Files.deleteIfExists(Paths.get(SYS_DIC_NAME + ".lg"));
-
-        recman = RecordManagerFactory.createRecordManager(SYS_DIC_NAME, props);
-        tree = BTree.createInstance(recman, new StringComparator());
-        recman.setNamedObject(BTREE_NAME, tree.getRecid());
+        metrics.stage("write-dic");
+        SurfacePoolWriter surfacePool = pool ? new SurfacePoolWriter(new File(SYS_DIC_NAME + ".pool")) : null;
+        List<DicWriter> writers = new ArrayList<>();
+        // 前回のsystem_dic.txtと比べながら新しいものを書くので、別の名前に書いてから置き換える
+        File textOutput = update ? new File(textFile.getPath() + ".tmp") : textFile;
+        writers.add(new TextDicWriter(textOutput));
+        if (update) {
+            writers.add(new BTreeDicUpdater(SYS_DIC_NAME, BTREE_NAME, textFile));
+        } else if (shards > 0) {
+            String[] starts = ShardedDicWriter.boundaries(listAll.cursor(), shards);
+            writers.add(new ShardedDicWriter(SYS_DIC_NAME, BTREE_NAME, starts, threads, bulkLoad, ranked, topK,
+                    surfacePool, tempDir));
+        } else {
+            writers.add(new BTreeDicWriter(SYS_DIC_NAME, BTREE_NAME, bulkLoad, ranked, topK, surfacePool));
+        }
+        if (trie) {
+            writers.add(new TrieDicWriter(new File(SYS_DIC_NAME + ".dat"), surfacePool));
+        }
+        if (sstable) {
+            writers.add(new SSTableDicWriter(new File(SYS_DIC_NAME + ".sst")));
+        }
+        if (predictTopN > 0) {
+            writers.add(new PredictDicWriter(new File(SYS_DIC_NAME + ".pred"), predictLength, predictTopN,
+                    surfacePool));
+        }
 
+        // 読みごとに表記をコスト順にまとめる。同じ表記は最初(最小コスト)のものだけ残す
         String key = "";
-        Set<String> values = new LinkedHashSet<>();
-        for (String list : listAll) {
-            String ss[] = list.split("\t");
-            String reading = ss[0];
-            String surface = ss[2];
+        Map<String, Integer> values = new LinkedHashMap<>();
+        long entries = 0;
+        long readings = 0;
+        while (cursor.next()) {
+            String reading = cursor.reading();
+            String surface = cursor.surface();
+            entries++;
 
             if (reading.equals(key)) {
-                values.add(surface);
+                values.putIfAbsent(surface, cursor.cost());
             } else {
                 if (values.size() > 0) {
-                    StringBuilder sb = new StringBuilder();
-                    for (String value : values) {
-                        if (sb.length() != 0) {
-                            sb.append("\t");
-                        }
-                        sb.append(value);
-                    }
-                    bw.write(key + "\t" + sb + "\n");
-                    tree.insert(key, sb.toString(), true);
+                    writeCandidates(writers, key, values);
                 }
                 key = reading;
+                readings++;
                 values.clear();
-                values.add(surface);
+                values.put(surface, cursor.cost());
             }
         }
         if (values.size() > 0) {
-            StringBuilder sb = new StringBuilder();
-            for (String value : values) {
-                if (sb.length() != 0) {
-                    sb.append("\t");
-                }
-                sb.append(value);
-            }
-            bw.write(key + "\t" + sb + "\n");
-            tree.insert(key, sb.toString(), true);
+            writeCandidates(writers, key, values);
+        }
+        for (DicWriter writer : writers) {
+            writer.close();
+        }
+        if (surfacePool != null) {
+            surfacePool.close();
+        }
+        listAll.close();
+        if (update) {
+            Files.move(textOutput.toPath(), textFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
         }
-        recman.commit();
-        recman.close();
-        bw.close();
+        metrics.count("write-dic", "entries", entries);
+        metrics.count("write-dic", "readings", readings);
+        manifest.write(manifestFile);
+        metrics.write(new File("GenDic.metrics.json"));
     }
 }
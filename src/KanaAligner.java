@@ -0,0 +1,107 @@
+/*
+ * 表記のかなが読みに順に含まれているかを調べる。
+ *
+ * ExtractWikipediaWord.addWordで表記から作っていた正規表現(漢字の並びを.*に、かなを
+ * [っ|つ]などの文字クラスに置き換えたもの)と同じ判定を、正規表現を作らずに行う。
+ * 漢字の並びで区切られたかなの並びを、先頭と末尾は読みの両端に合わせ、途中は読みの
+ * 前から順に最初に見つかる位置に合わせる。.*だけの正規表現はこれで一致の有無が決まる。
+ */
+public class KanaAligner {
+
+    static final char KATAKANA_BASE = '\u30a0';
+    // カタカナにした表記の文字ごとに、一致する読みの文字。nullなら同じ文字のひらがなだけ
+    static final String[] ALTERNATIVES = new String[0x60];
+
+    static {
+        put('ッ', "っつ");
+        put('ツ', "っつ");
+        put('ヤ', "やゃ");
+        put('ヵ', "かが");
+        put('ヶ', "ゖけかが");
+        put('ケ', "ゖけかが");
+        put('ヰ', "ゐい");
+        put('ヱ', "ゑえ");
+        put('ヲ', "をお");
+    }
+
+    static void put(char katakana, String hiragana) {
+        ALTERNATIVES[katakana - KATAKANA_BASE] = hiragana;
+    }
+
+    // 表記の文字sが読みの文字rに一致するか。rはひらがなにしたもの
+    static boolean accepts(char s, char r) {
+        char k = ExtractWikipediaWord.toWideKatakana(s);
+        if (k >= KATAKANA_BASE && k < KATAKANA_BASE + ALTERNATIVES.length) {
+            String alternatives = ALTERNATIVES[k - KATAKANA_BASE];
+            if (alternatives != null) {
+                return alternatives.indexOf(r) >= 0;
+            }
+        }
+        return ExtractWikipediaWord.toWideHiragana(k) == r;
+    }
+
+    // surface[from, to)がreading[at...]に一致するか
+    static boolean matchesAt(String surface, int from, int to, String reading, int at) {
+        if (at < 0 || at + (to - from) > reading.length()) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            if (!accepts(surface.charAt(i), reading.charAt(at + i - from))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * 表記の漢字(々ゝゞを含む)の並びを任意の文字列として、表記全体が読み全体に一致するか。
+     * readingはひらがなにしたもの。
+     */
+    static boolean matches(String surface, String reading) {
+        int n = surface.length();
+        // 先頭のかなの並び
+        int head = 0;
+        while (head < n && !CharClass.is(surface.charAt(head), CharClass.KANJI_GAP)) {
+            head++;
+        }
+        if (head == n) {
+            // 漢字がなければ一文字ずつ対応する
+            return n == reading.length() && matchesAt(surface, 0, n, reading, 0);
+        }
+        // 末尾のかなの並び
+        int tail = n;
+        while (!CharClass.is(surface.charAt(tail - 1), CharClass.KANJI_GAP)) {
+            tail--;
+        }
+        if (!matchesAt(surface, 0, head, reading, 0)) {
+            return false;
+        }
+        int limit = reading.length() - (n - tail);
+        if (limit < head || !matchesAt(surface, tail, n, reading, limit)) {
+            return false;
+        }
+        // 途中のかなの並びは前から順に最初に一致する位置に合わせる
+        int pos = head;
+        int i = head;
+        while (i < tail) {
+            if (CharClass.is(surface.charAt(i), CharClass.KANJI_GAP)) {
+                i++;
+                continue;
+            }
+            int end = i;
+            while (!CharClass.is(surface.charAt(end), CharClass.KANJI_GAP)) {
+                end++;
+            }
+            int at = pos;
+            while (at + (end - i) <= limit && !matchesAt(surface, i, end, reading, at)) {
+                at++;
+            }
+            if (at + (end - i) > limit) {
+                return false;
+            }
+            pos = at + (end - i);
+            i = end;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,124 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * GenDic.readLexの処理結果を受け取るバッファ。
+ * 並列処理ではチャンクごとに作成し、処理後にファイル内の順序どおり統合する。
+ */
+public class LexBuffer {
+
+    /*
+     * 除外の規則と語尾の補完の分岐ごとの件数。行ごとに数えるので、BuildMetricsの名前での検索や
+     * Stringの連結をせずに配列に数え、段階の終わりにmergeCountsでまとめる。
+     * 名前が「.」で終わるものは値(活用形や品詞)ごとの内訳で、名前は書き出すときに作る。
+     */
+    enum Counter {
+        ROWS("lex.rows"),
+        SKIP_INTERJECTION("skip.感動詞"),
+        SKIP_ASCII_ART("skip.ＡＡ"),
+        SKIP_SPLIT_C("skip.分割タイプC"),
+        SKIP_READING_NOT_HIRAGANA("skip.読みが平仮名以外"),
+        SKIP_SURFACE_NOT_KANA_KANJI("skip.表記がかな漢字以外"),
+        SKIP_SOKUON("skip.促音"),
+        SYMBOL("symbol.記号"),
+        SYMBOL_SURROGATE("symbol.サロゲート"),
+        SYMBOL_KIGOU("symbol.きごう"),
+        ADOPTED("lex.採用"),
+        EXPAND_KA_IRREGULAR("expand.カ行変格."),
+        EXPAND_SA_IRREGULAR("expand.サ行変格."),
+        EXPAND_SOKUON("expand.促音."),
+        EXPAND_IRREALIS_VERB("expand.未然形-一般.動詞"),
+        EXPAND_IRREALIS_ADJECTIVE("expand.未然形-一般.形容詞"),
+        EXPAND_HYPOTHETICAL("expand.仮定形-一般."),
+        EXPAND_CONTINUATIVE_KAMI_ICHIDAN("expand.連用形-一般.上一段"),
+        EXPAND_CONTINUATIVE_SHIMO_ICHIDAN("expand.連用形-一般.下一段"),
+        EXPAND_CONTINUATIVE("expand.連用形-一般"),
+        EXPAND_NONE("expand.なし"),
+        COMPLEMENT_SOKUON("complement.促音");
+
+        static final Counter[] ALL = values();
+        final String name;
+
+        Counter(String name) {
+            this.name = name;
+        }
+    }
+
+    final long[] counts = new long[Counter.ALL.length];
+    // 値ごとの内訳。キーはLexRow.getが返す、同じ内容なら同じString
+    final Map<Counter, Map<String, long[]>> breakdowns = new EnumMap<>(Counter.class);
+    final EntrySorter sorter;
+    final EntryArena entries;
+    final Collection<String> skip;
+    final Collection<String> lex;
+    final Collection<String> symbol;
+    final Collection<String> complement;
+
+    // チャンクごとのローカルバッファ
+    LexBuffer() {
+        this.sorter = null;
+        this.entries = new EntryArena();
+        this.skip = new ArrayList<>();
+        this.lex = new ArrayList<>();
+        this.symbol = new ArrayList<>();
+        this.complement = new ArrayList<>();
+    }
+
+    // 既存のソーターとコレクションに直接書き込むバッファ
+    LexBuffer(EntrySorter sorter, Collection<String> skip, Collection<String> lex,
+            Collection<String> symbol, Collection<String> complement) {
+        this.sorter = sorter;
+        this.entries = null;
+        this.skip = skip;
+        this.lex = lex;
+        this.symbol = symbol;
+        this.complement = complement;
+    }
+
+    void addEntry(String reading, int cost, String surface) throws IOException {
+        if (sorter != null) {
+            sorter.add(reading, cost, surface);
+        } else {
+            entries.add(reading, cost, surface);
+        }
+    }
+
+    // 語尾を補完したエントリ
+    void addEntry(String reading, String readingSuffix, int cost, String surface,
+            String surfaceSuffix) throws IOException {
+        if (sorter != null) {
+            sorter.add(reading, readingSuffix, cost, surface, surfaceSuffix);
+        } else {
+            entries.add(reading, readingSuffix, cost, surface, surfaceSuffix);
+        }
+    }
+
+    void count(Counter counter) {
+        counts[counter.ordinal()]++;
+    }
+
+    void count(Counter counter, String value) {
+        breakdowns.computeIfAbsent(counter, k -> new HashMap<>()).computeIfAbsent(value, k -> new long[1])[0]++;
+    }
+
+    // 数えた件数をmetricsのカウンタに加えて数え直す
+    void mergeCounts(BuildMetrics metrics) {
+        for (Counter counter : Counter.ALL) {
+            long n = counts[counter.ordinal()];
+            if (n > 0) {
+                metrics.add(counter.name, n);
+                counts[counter.ordinal()] = 0;
+            }
+        }
+        for (Map.Entry<Counter, Map<String, long[]>> breakdown : breakdowns.entrySet()) {
+            for (Map.Entry<String, long[]> value : breakdown.getValue().entrySet()) {
+                metrics.add(breakdown.getKey().name + value.getKey(), value.getValue()[0]);
+            }
+        }
+        breakdowns.clear();
+    }
+}
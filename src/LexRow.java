@@ -0,0 +1,254 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/*
+ * Sudachiの*_lex.csvを一行ずつ読み、列の位置だけを記録する。
+ *
+ * 行は使い回すchar配列に読み込み、line.split(",")のように列ごとのStringは作らない。
+ * 品詞などの値の種類が少ない列はgetで同じ内容に同じStringを返し、
+ * 表記と読みはunescapeで必要な列だけを一度の走査で復元する。
+ */
+public class LexRow {
+    final Reader in;
+    char[] buf = new char[1 << 16];
+    int pos = 0;
+    int limit = 0;
+    boolean eof = false;
+    // 現在の行はbuf[lineStart, lineEnd)
+    int lineStart;
+    int lineEnd;
+    // 列iはbuf[starts[i], ends[i])
+    int[] starts = new int[32];
+    int[] ends = new int[32];
+    int columnCount;
+    String line;
+    char[] scratch = new char[256];
+    // getで返したString。オープンアドレス法のハッシュ表
+    String[] table = new String[1 << 10];
+    int tableSize = 0;
+
+    LexRow(Reader in) {
+        this.in = in;
+    }
+
+    // 次の行に進む。BufferedReader.readLineと同じく\n、\r、\r\nで区切る
+    boolean next() throws IOException {
+        line = null;
+        int i = pos;
+        while (true) {
+            while (i < limit && buf[i] != '\n' && buf[i] != '\r') {
+                i++;
+            }
+            if (i < limit) {
+                if (buf[i] == '\r' && i + 1 == limit && !eof) {
+                    // \r\nかどうかを確かめるために読み足す
+                    i = fill(i);
+                    continue;
+                }
+                break;
+            }
+            if (eof) {
+                if (pos == limit) {
+                    return false;
+                }
+                break;
+            }
+            i = fill(i);
+        }
+        lineStart = pos;
+        lineEnd = i;
+        if (i < limit) {
+            pos = (buf[i] == '\r' && i + 1 < limit && buf[i + 1] == '\n') ? i + 2 : i + 1;
+        } else {
+            pos = limit;
+        }
+        splitColumns();
+        return true;
+    }
+
+    // 未処理の部分をbufの先頭に寄せて読み足す。iの新しい位置を返す
+    int fill(int i) throws IOException {
+        int shift = pos;
+        if (shift > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        if (limit == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n < 0) {
+            eof = true;
+        } else {
+            limit += n;
+        }
+        return i - shift;
+    }
+
+    void splitColumns() {
+        columnCount = 0;
+        int start = lineStart;
+        for (int i = lineStart; i <= lineEnd; i++) {
+            if (i == lineEnd || buf[i] == ',') {
+                if (columnCount == starts.length) {
+                    starts = Arrays.copyOf(starts, columnCount * 2);
+                    ends = Arrays.copyOf(ends, columnCount * 2);
+                }
+                starts[columnCount] = start;
+                ends[columnCount] = i;
+                columnCount++;
+                start = i + 1;
+            }
+        }
+    }
+
+    void checkColumn(int i) {
+        if (i >= columnCount) {
+            throw new ArrayIndexOutOfBoundsException("列" + i + "がない: " + line());
+        }
+    }
+
+    // 行全体。採用した行を保存するときだけ作る
+    String line() {
+        if (line == null) {
+            line = new String(buf, lineStart, lineEnd - lineStart);
+        }
+        return line;
+    }
+
+    int length(int i) {
+        checkColumn(i);
+        return ends[i] - starts[i];
+    }
+
+    // 値の種類が少ない列用。同じ内容には同じStringを返す
+    String get(int i) {
+        checkColumn(i);
+        int start = starts[i];
+        int length = ends[i] - start;
+        int h = 0;
+        for (int k = 0; k < length; k++) {
+            h = 31 * h + buf[start + k];
+        }
+        int mask = table.length - 1;
+        int slot = h & mask;
+        while (table[slot] != null) {
+            String s = table[slot];
+            if (s.hashCode() == h && contentEquals(s, start, length)) {
+                return s;
+            }
+            slot = (slot + 1) & mask;
+        }
+        String s = new String(buf, start, length);
+        table[slot] = s;
+        if (++tableSize * 2 > table.length) {
+            rehash();
+        }
+        return s;
+    }
+
+    boolean contentEquals(String s, int start, int length) {
+        if (s.length() != length) {
+            return false;
+        }
+        for (int k = 0; k < length; k++) {
+            if (s.charAt(k) != buf[start + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void rehash() {
+        String[] old = table;
+        table = new String[old.length * 2];
+        int mask = table.length - 1;
+        for (String s : old) {
+            if (s != null) {
+                int slot = s.hashCode() & mask;
+                while (table[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = s;
+            }
+        }
+    }
+
+    // Integer.parseIntと同じ。数字だけの列はStringを作らずに読む
+    int parseInt(int i) {
+        checkColumn(i);
+        int start = starts[i];
+        int end = ends[i];
+        boolean negative = start < end && buf[start] == '-';
+        int k = negative ? start + 1 : start;
+        if (k == end || end - k > 9) {
+            return Integer.parseInt(new String(buf, start, end - start));
+        }
+        int v = 0;
+        for (; k < end; k++) {
+            char c = buf[k];
+            if (c < '0' || c > '9') {
+                return Integer.parseInt(new String(buf, start, end - start));
+            }
+            v = v * 10 + (c - '0');
+        }
+        return negative ? -v : v;
+    }
+
+    /*
+     * GenDic.unescapeと同じく" ( ) , / |(小文字も)を戻す。
+     * hiraganaならGenDic.toWideHiraganaも同時に行う。
+     */
+    String unescape(int i, boolean hiragana) {
+        checkColumn(i);
+        int start = starts[i];
+        int end = ends[i];
+        if (scratch.length < end - start) {
+            scratch = new char[(end - start) * 2];
+        }
+        int n = 0;
+        for (int k = start; k < end; k++) {
+            char c = buf[k];
+            if (c == '\\' && k + 6 <= end) {
+                char escaped = escaped(k);
+                if (escaped != 0) {
+                    scratch[n++] = escaped;
+                    k += 5;
+                    continue;
+                }
+            }
+            scratch[n++] = hiragana ? GenDic.toWideHiragana(c) : c;
+        }
+        return new String(scratch, 0, n);
+    }
+
+    // buf[k]からの\\u00XXが戻す対象なら元の文字、そうでなければ0
+    char escaped(int k) {
+        if (buf[k + 1] != 'u' || buf[k + 2] != '0' || buf[k + 3] != '0') {
+            return 0;
+        }
+        char hi = buf[k + 4];
+        char lo = buf[k + 5];
+        if (hi == '2') {
+            switch (lo) {
+                case '2':
+                    return '"';
+                case '8':
+                    return '(';
+                case '9':
+                    return ')';
+                case 'C':
+                case 'c':
+                    return ',';
+                case 'F':
+                case 'f':
+                    return '/';
+            }
+        } else if (hi == '7' && (lo == 'C' || lo == 'c')) {
+            return '|';
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,164 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * PredictDicWriterが書き出したsystem_dic.predをメモリマップし、読みの接頭辞から予測候補を引く。
+ *
+ * findは接頭辞の文字数だけダブル配列をたどるだけで、BTreeの範囲検索や値の分割をしない。
+ * 戻り値の番号からcount、reading、surface、costで候補をコストの小さい順に取り出す。
+ * maxLengthより長い接頭辞は索引にないので、BTreeの範囲検索で引くこと。
+ */
+public class PredictDic implements Closeable {
+    final FileChannel channel;
+    final int maxLength;
+    final int topN;
+    final int charMin;
+    final int charMax;
+    final int arraySize;
+    final int keyCount;
+    final ShortBuffer codes;
+    final IntBuffer base;
+    final IntBuffer check;
+    final IntBuffer listOffsets;
+    final IntBuffer lists;
+    final IntBuffer candidateReadings;
+    final IntBuffer candidateSurfaces;
+    final IntBuffer candidateCosts;
+    final IntBuffer stringOffsets;
+    final CharBuffer chars;
+    // 表記の表を使う形式のときだけ
+    final SurfacePool pool;
+
+    PredictDic(File file) throws IOException {
+        this(file, null);
+    }
+
+    // 表記の表を使う形式ならpoolを渡す
+    PredictDic(File file, SurfacePool pool) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        int magic = buf.getInt(0);
+        if (magic != PredictDicWriter.MAGIC && magic != PredictDicWriter.MAGIC_POOLED) {
+            throw new IOException("予測候補の索引ではない: " + file);
+        }
+        if (magic == PredictDicWriter.MAGIC_POOLED && pool == null) {
+            throw new IOException("表記の表が必要: " + file);
+        }
+        this.pool = magic == PredictDicWriter.MAGIC_POOLED ? pool : null;
+        maxLength = buf.getInt(4);
+        topN = buf.getInt(8);
+        charMin = buf.getInt(12);
+        charMax = buf.getInt(16);
+        arraySize = buf.getInt(20);
+        keyCount = buf.getInt(24);
+        int listLength = buf.getInt(28);
+        int candidateCount = buf.getInt(32);
+        int stringCount = buf.getInt(36);
+        int charLength = buf.getInt(40);
+        int pos = 44;
+        int tableLength = Math.max(charMax - charMin + 1, 0);
+        codes = TrieDic.slice(buf, pos, tableLength * 2).asShortBuffer();
+        pos += (tableLength + tableLength % 2) * 2;
+        base = TrieDic.slice(buf, pos, arraySize * 4).asIntBuffer();
+        pos += arraySize * 4;
+        check = TrieDic.slice(buf, pos, arraySize * 4).asIntBuffer();
+        pos += arraySize * 4;
+        listOffsets = TrieDic.slice(buf, pos, (keyCount + 1) * 4).asIntBuffer();
+        pos += (keyCount + 1) * 4;
+        lists = TrieDic.slice(buf, pos, listLength * 4).asIntBuffer();
+        pos += listLength * 4;
+        candidateReadings = TrieDic.slice(buf, pos, candidateCount * 4).asIntBuffer();
+        pos += candidateCount * 4;
+        candidateSurfaces = TrieDic.slice(buf, pos, candidateCount * 4).asIntBuffer();
+        pos += candidateCount * 4;
+        candidateCosts = TrieDic.slice(buf, pos, candidateCount * 4).asIntBuffer();
+        pos += candidateCount * 4;
+        stringOffsets = TrieDic.slice(buf, pos, (stringCount + 1) * 4).asIntBuffer();
+        pos += (stringCount + 1) * 4;
+        chars = TrieDic.slice(buf, pos, charLength * 2).asCharBuffer();
+    }
+
+    int code(char ch) {
+        if (ch < charMin || ch > charMax) {
+            return 0;
+        }
+        return codes.get(ch - charMin) & 0xffff;
+    }
+
+    // 接頭辞の番号。索引にない(その接頭辞で始まる読みがないか、maxLengthより長い)なら-1
+    int find(CharSequence prefix) {
+        if (prefix.length() == 0 || prefix.length() > maxLength) {
+            return -1;
+        }
+        int s = 0;
+        for (int i = 0; i < prefix.length(); i++) {
+            int c = code(prefix.charAt(i));
+            if (c == 0) {
+                return -1;
+            }
+            int t = base.get(s) + c;
+            if (t >= arraySize || check.get(t) != s) {
+                return -1;
+            }
+            s = t;
+        }
+        int t = base.get(s);
+        if (t < 0 || t >= arraySize || check.get(t) != s) {
+            return -1;
+        }
+        return -base.get(t) - 1;
+    }
+
+    int count(int id) {
+        return listOffsets.get(id + 1) - listOffsets.get(id);
+    }
+
+    int candidate(int id, int index) {
+        return lists.get(listOffsets.get(id) + index);
+    }
+
+    String string(int n) {
+        int from = stringOffsets.get(n);
+        char[] cs = new char[stringOffsets.get(n + 1) - from];
+        chars.get(from, cs);
+        return new String(cs);
+    }
+
+    String reading(int id, int index) {
+        return string(candidateReadings.get(candidate(id, index)));
+    }
+
+    String surface(int id, int index) {
+        int n = candidateSurfaces.get(candidate(id, index));
+        return pool != null ? pool.get(n) : string(n);
+    }
+
+    int cost(int id, int index) {
+        return candidateCosts.get(candidate(id, index));
+    }
+
+    // 接頭辞の予測候補の表記。なければ空
+    String[] predict(CharSequence prefix) {
+        int id = find(prefix);
+        if (id < 0) {
+            return new String[0];
+        }
+        String[] surfaces = new String[count(id)];
+        for (int i = 0; i < surfaces.length; i++) {
+            surfaces[i] = surface(id, i);
+        }
+        return surfaces;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
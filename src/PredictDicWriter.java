@@ -0,0 +1,261 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * system_dic.pred: 読みの先頭maxLength文字までの接頭辞ごとに、その接頭辞で始まる読みの候補を
+ * コストの小さい順にtopN件まで求め、接頭辞のダブル配列のノードから候補の番号の並びを引ける形で書き出す。
+ * 読み出しはPredictDic。
+ *
+ * 読みは昇順に渡されるので、接頭辞は初めて現れたときに昇順に登録でき、次の読みと共通しなくなった
+ * ところで候補が確定する。確定した候補だけを(読み, 表記)ごとに一度だけ候補の表に入れる。
+ *
+ * 形式(ビッグエンディアン)
+ *   int MAGIC, int maxLength, int topN, int charMin, int charMax, int arraySize, int keyCount,
+ *   int listLength, int candidateCount, int stringCount, int charLength
+ *   short[charMax - charMin + 1] 文字コード表(偶数個になるよう0で埋める)
+ *   int[arraySize] base, int[arraySize] check
+ *   int[keyCount + 1] 接頭辞ごとの候補の並びの開始位置
+ *   int[listLength] 候補の番号
+ *   int[candidateCount] 読みの文字列番号, int[candidateCount] 表記の文字列番号, int[candidateCount] コスト
+ *   int[stringCount + 1] 文字列ごとの文字の開始位置
+ *   char[charLength] 文字列の文字
+ *
+ * 表記の表(SurfacePoolWriter)を使う場合はMAGIC_POOLEDで始まり、表記の文字列番号の代わりに表記のIDを書く。
+ */
+public class PredictDicWriter implements DicWriter {
+    static final int MAGIC = 0x50524431; // "PRD1"
+    static final int MAGIC_POOLED = 0x50524450; // "PRDP"
+
+    // 候補が確定していない接頭辞
+    static class Prefix {
+        int key;
+        int size = 0;
+        final int[] costs;
+        final String[] readings;
+        final String[] surfaces;
+
+        Prefix(int topN) {
+            costs = new int[topN];
+            readings = new String[topN];
+            surfaces = new String[topN];
+        }
+
+        // コストが同じなら先に渡されたものを前にする
+        void offer(String reading, String surface, int cost) {
+            int i = size;
+            if (size == costs.length) {
+                i--;
+            } else {
+                size++;
+            }
+            while (i > 0 && costs[i - 1] > cost) {
+                costs[i] = costs[i - 1];
+                readings[i] = readings[i - 1];
+                surfaces[i] = surfaces[i - 1];
+                i--;
+            }
+            costs[i] = cost;
+            readings[i] = reading;
+            surfaces[i] = surface;
+        }
+
+        boolean accepts(int cost) {
+            return size < costs.length || cost < costs[size - 1];
+        }
+    }
+
+    final File file;
+    final int maxLength;
+    final int topN;
+    final SurfacePoolWriter pool;
+    final CharArena keys = new CharArena();
+    final boolean[] used = new boolean[Character.MAX_VALUE + 1];
+    // open[d]は長さdの接頭辞。openDepthまでが前の読みの接頭辞
+    final Prefix[] open;
+    int openDepth = 0;
+    String last = "";
+
+    // 接頭辞ごとの候補の並びは確定した順にlistsに追加し、closeで接頭辞の順に並べ直す
+    int[] listStarts = new int[1 << 10];
+    int[] listSizes = new int[1 << 10];
+    int[] lists = new int[1 << 12];
+    int listLength = 0;
+
+    // 候補の表と、読みと表記の文字列
+    final CharArena strings = new CharArena();
+    final Map<Long, Integer> candidateIds = new HashMap<>();
+    int[] candidateReadings = new int[1 << 10];
+    int[] candidateSurfaces = new int[1 << 10];
+    int[] candidateCosts = new int[1 << 10];
+    int candidateCount = 0;
+
+    PredictDicWriter(File file, int maxLength, int topN, SurfacePoolWriter pool) {
+        this.file = file;
+        this.maxLength = maxLength;
+        this.topN = topN;
+        this.pool = pool;
+        open = new Prefix[maxLength + 1];
+        for (int d = 1; d <= maxLength; d++) {
+            open[d] = new Prefix(topN);
+        }
+    }
+
+    @Override
+    public void add(String reading, String[] surfaces, int[] costs) throws IOException {
+        int common = 0;
+        while (common < openDepth && common < reading.length() && last.charAt(common) == reading.charAt(common)) {
+            common++;
+        }
+        finish(common);
+        int depth = Math.min(maxLength, reading.length());
+        for (int d = common + 1; d <= depth; d++) {
+            used[reading.charAt(d - 1)] = true;
+            int key = keys.intern(reading.substring(0, d));
+            if (key != keys.size() - 1) {
+                throw new IllegalArgumentException("読みが昇順ではない: " + reading);
+            }
+            open[d].key = key;
+            open[d].size = 0;
+        }
+        openDepth = depth;
+        last = reading;
+
+        // 候補はコストの小さい順なので、入らなくなったらそれ以降も入らない
+        for (int d = 1; d <= depth; d++) {
+            Prefix prefix = open[d];
+            for (int i = 0; i < surfaces.length && prefix.accepts(costs[i]); i++) {
+                prefix.offer(reading, surfaces[i], costs[i]);
+            }
+        }
+    }
+
+    // depthより長い接頭辞の候補を確定する
+    void finish(int depth) {
+        for (int d = openDepth; d > depth; d--) {
+            Prefix prefix = open[d];
+            int key = prefix.key;
+            if (key >= listStarts.length) {
+                listStarts = Arrays.copyOf(listStarts, Math.max(listStarts.length * 2, key + 1));
+                listSizes = Arrays.copyOf(listSizes, listStarts.length);
+            }
+            if (listLength + prefix.size > lists.length) {
+                lists = Arrays.copyOf(lists, Math.max(lists.length * 2, listLength + prefix.size));
+            }
+            listStarts[key] = listLength;
+            listSizes[key] = prefix.size;
+            for (int i = 0; i < prefix.size; i++) {
+                lists[listLength++] = candidate(prefix.readings[i], prefix.surfaces[i], prefix.costs[i]);
+                prefix.readings[i] = null;
+                prefix.surfaces[i] = null;
+            }
+        }
+        openDepth = Math.min(openDepth, depth);
+    }
+
+    int candidate(String reading, String surface, int cost) {
+        int readingId = strings.intern(reading);
+        int surfaceId = pool != null ? pool.id(surface) : strings.intern(surface);
+        Long k = ((long) readingId << 32) | surfaceId;
+        Integer id = candidateIds.get(k);
+        if (id != null) {
+            return id;
+        }
+        if (candidateCount == candidateReadings.length) {
+            candidateReadings = Arrays.copyOf(candidateReadings, candidateCount * 2);
+            candidateSurfaces = Arrays.copyOf(candidateSurfaces, candidateCount * 2);
+            candidateCosts = Arrays.copyOf(candidateCosts, candidateCount * 2);
+        }
+        candidateReadings[candidateCount] = readingId;
+        candidateSurfaces[candidateCount] = surfaceId;
+        candidateCosts[candidateCount] = cost;
+        candidateIds.put(k, candidateCount);
+        return candidateCount++;
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish(0);
+
+        // 使われている文字に1からのコードを振る
+        int charMin = 0;
+        int charMax = -1;
+        for (int c = 0; c < used.length; c++) {
+            if (used[c]) {
+                if (charMax < 0) {
+                    charMin = c;
+                }
+                charMax = c;
+            }
+        }
+        int[] codeTable = new int[Math.max(charMax - charMin + 1, 0)];
+        int code = 1;
+        for (int c = charMin; c <= charMax; c++) {
+            if (used[c]) {
+                codeTable[c - charMin] = code++;
+            }
+        }
+
+        DoubleArrayBuilder builder = new DoubleArrayBuilder(keys, keys.size(), charMin, codeTable);
+        builder.build();
+
+        int keyCount = keys.size();
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        out.writeInt(pool != null ? MAGIC_POOLED : MAGIC);
+        out.writeInt(maxLength);
+        out.writeInt(topN);
+        out.writeInt(charMin);
+        out.writeInt(charMax);
+        out.writeInt(builder.size);
+        out.writeInt(keyCount);
+        out.writeInt(listLength);
+        out.writeInt(candidateCount);
+        out.writeInt(strings.size());
+        out.writeInt(strings.offsets[strings.size()]);
+        for (int c : codeTable) {
+            out.writeShort(c);
+        }
+        if (codeTable.length % 2 != 0) {
+            out.writeShort(0);
+        }
+        for (int i = 0; i < builder.size; i++) {
+            out.writeInt(builder.base[i]);
+        }
+        for (int i = 0; i < builder.size; i++) {
+            out.writeInt(builder.check[i]);
+        }
+        int offset = 0;
+        for (int key = 0; key < keyCount; key++) {
+            out.writeInt(offset);
+            offset += listSizes[key];
+        }
+        out.writeInt(offset);
+        for (int key = 0; key < keyCount; key++) {
+            for (int i = 0; i < listSizes[key]; i++) {
+                out.writeInt(lists[listStarts[key] + i]);
+            }
+        }
+        for (int i = 0; i < candidateCount; i++) {
+            out.writeInt(candidateReadings[i]);
+        }
+        for (int i = 0; i < candidateCount; i++) {
+            out.writeInt(candidateSurfaces[i]);
+        }
+        for (int i = 0; i < candidateCount; i++) {
+            out.writeInt(candidateCosts[i]);
+        }
+        for (int i = 0; i <= strings.size(); i++) {
+            out.writeInt(strings.offsets[i]);
+        }
+        for (int i = 0; i < strings.offsets[strings.size()]; i++) {
+            out.writeChar(strings.chars[i]);
+        }
+        out.close();
+    }
+}
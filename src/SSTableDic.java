@@ -0,0 +1,196 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+ * SSTableDicWriterが書き出したsystem_dic.sstをメモリマップして引く。
+ *
+ * 索引を二分探索して読みが入っているはずのブロックを決め、そのブロックだけを先頭から復元する。
+ * 開くときに読むのは末尾の固定長の部分だけ。
+ */
+public class SSTableDic implements Closeable {
+
+    // scanで読みと表記を受け取る
+    interface Visitor {
+        void visit(String reading, String[] surfaces);
+    }
+
+    final FileChannel channel;
+    final ByteBuffer buf;
+    final int indexOffset;
+    final int blockCount;
+    final int keyCount;
+    // 索引の各項目の開始位置の表の位置
+    final int entryTable;
+
+    SSTableDic(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        int footer = buf.limit() - 16;
+        if (footer < 0 || buf.getInt(footer + 12) != SSTableDicWriter.MAGIC) {
+            throw new IOException("SSTableの辞書ではない: " + file);
+        }
+        indexOffset = buf.getInt(footer);
+        blockCount = buf.getInt(footer + 4);
+        keyCount = buf.getInt(footer + 8);
+        entryTable = footer - blockCount * 4;
+    }
+
+    int keyCount() {
+        return keyCount;
+    }
+
+    // 読みの表記。なければnull
+    String[] get(CharSequence reading) {
+        int block = findBlock(reading);
+        if (block < 0) {
+            return null;
+        }
+        ByteBuffer b = blockBuffer(block);
+        char[] key = new char[64];
+        int keyLength = 0;
+        while (b.hasRemaining()) {
+            int shared = CompactCodec.getVarint(b);
+            int rest = CompactCodec.getVarint(b);
+            if (shared + rest > key.length) {
+                key = Arrays.copyOf(key, (shared + rest) * 2);
+            }
+            for (int i = 0; i < rest; i++) {
+                key[shared + i] = CompactCodec.getChar(b);
+            }
+            keyLength = shared + rest;
+            int c = compare(key, keyLength, reading);
+            if (c == 0) {
+                return readSurfaces(b, key, keyLength);
+            }
+            if (c > 0) {
+                return null;
+            }
+            skipSurfaces(b);
+        }
+        return null;
+    }
+
+    // from以上to未満の読みを昇順に渡す。toがnullなら最後まで
+    void scan(CharSequence from, CharSequence to, Visitor visitor) {
+        int block = Math.max(findBlock(from), 0);
+        char[] key = new char[64];
+        for (; block < blockCount; block++) {
+            ByteBuffer b = blockBuffer(block);
+            while (b.hasRemaining()) {
+                int shared = CompactCodec.getVarint(b);
+                int rest = CompactCodec.getVarint(b);
+                if (shared + rest > key.length) {
+                    key = Arrays.copyOf(key, (shared + rest) * 2);
+                }
+                for (int i = 0; i < rest; i++) {
+                    key[shared + i] = CompactCodec.getChar(b);
+                }
+                int keyLength = shared + rest;
+                if (compare(key, keyLength, from) < 0) {
+                    skipSurfaces(b);
+                    continue;
+                }
+                if (to != null && compare(key, keyLength, to) >= 0) {
+                    return;
+                }
+                visitor.visit(new String(key, 0, keyLength), readSurfaces(b, key, keyLength));
+            }
+        }
+    }
+
+    // 先頭の読みがreading以下である最後のブロック。readingが最初の読みより小さければ-1
+    int findBlock(CharSequence reading) {
+        int lo = 0;
+        int hi = blockCount - 1;
+        int found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareIndexKey(mid, reading) <= 0) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    int compareIndexKey(int block, CharSequence reading) {
+        ByteBuffer b = buf.duplicate();
+        b.position(buf.getInt(entryTable + block * 4));
+        int length = CompactCodec.getVarint(b);
+        int n = Math.min(length, reading.length());
+        for (int i = 0; i < n; i++) {
+            char c = CompactCodec.getChar(b);
+            if (c != reading.charAt(i)) {
+                return c - reading.charAt(i);
+            }
+        }
+        return length - reading.length();
+    }
+
+    int blockOffset(int block) {
+        ByteBuffer b = buf.duplicate();
+        b.position(buf.getInt(entryTable + block * 4));
+        int length = CompactCodec.getVarint(b);
+        for (int i = 0; i < length; i++) {
+            CompactCodec.getChar(b);
+        }
+        return b.getInt();
+    }
+
+    ByteBuffer blockBuffer(int block) {
+        ByteBuffer b = buf.duplicate();
+        int end = block + 1 < blockCount ? blockOffset(block + 1) : indexOffset;
+        b.limit(end);
+        b.position(blockOffset(block));
+        return b;
+    }
+
+    static int compare(char[] key, int keyLength, CharSequence reading) {
+        int n = Math.min(keyLength, reading.length());
+        for (int i = 0; i < n; i++) {
+            if (key[i] != reading.charAt(i)) {
+                return key[i] - reading.charAt(i);
+            }
+        }
+        return keyLength - reading.length();
+    }
+
+    // 表記の末尾のsuffix文字は読みの末尾と同じ
+    static String[] readSurfaces(ByteBuffer b, char[] key, int keyLength) {
+        String[] surfaces = new String[CompactCodec.getVarint(b)];
+        for (int i = 0; i < surfaces.length; i++) {
+            int suffix = CompactCodec.getVarint(b);
+            int rest = CompactCodec.getVarint(b);
+            char[] cs = new char[rest + suffix];
+            for (int j = 0; j < rest; j++) {
+                cs[j] = CompactCodec.getChar(b);
+            }
+            System.arraycopy(key, keyLength - suffix, cs, rest, suffix);
+            surfaces[i] = new String(cs);
+        }
+        return surfaces;
+    }
+
+    static void skipSurfaces(ByteBuffer b) {
+        int count = CompactCodec.getVarint(b);
+        for (int i = 0; i < count; i++) {
+            CompactCodec.getVarint(b);
+            int rest = CompactCodec.getVarint(b);
+            for (int j = 0; j < rest; j++) {
+                CompactCodec.getChar(b);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,151 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * system_dic.sst: 読みの昇順に並べたエントリを固定長のブロックに詰めて書き出す。読み出しはSSTableDic。
+ *
+ * エントリ: 可変長整数で「前の読みと共通する文字数」「残りの文字数」、残りの文字、
+ * 表記の数、表記ごとに「読みと共通する末尾の文字数」「残りの文字数」と残りの文字。
+ * ブロックの先頭のエントリは前の読みと共通部分を持たない。
+ *
+ * 整数と文字はCompactCodecの形式で書く。
+ *
+ * 形式(ビッグエンディアン)
+ *   ブロック...
+ *   索引: ブロックごとに先頭の読み(可変長整数の文字数と文字)とint ブロックの開始位置
+ *   int[blockCount] 索引の各項目の開始位置
+ *   int 索引の開始位置, int blockCount, int keyCount, int MAGIC
+ */
+public class SSTableDicWriter implements DicWriter {
+    static final int MAGIC = 0x53535431; // "SST1"
+    static final int BLOCK_SIZE = 4096;
+
+    final DataOutputStream out;
+    byte[] block = new byte[BLOCK_SIZE * 2];
+    int blockLength = 0;
+    // 書き出したブロックの合計の長さ
+    int offset = 0;
+    String previous = null;
+    int keyCount = 0;
+    final List<String> firstKeys = new ArrayList<>();
+    final List<Integer> blockOffsets = new ArrayList<>();
+    // エントリを組み立てる作業領域
+    byte[] entry = new byte[256];
+    int entryLength;
+
+    SSTableDicWriter(File file) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+    }
+
+    @Override
+    public void add(String reading, String[] surfaces, int[] costs) throws IOException {
+        // 前のエントリの続きとして組み立て、ブロックに収まらなければ新しいブロックの先頭として組み直す
+        int shared = blockLength == 0 ? 0 : sharedPrefix(previous, reading);
+        encode(reading, shared, surfaces);
+        if (blockLength > 0 && blockLength + entryLength > BLOCK_SIZE) {
+            flushBlock();
+            encode(reading, 0, surfaces);
+        }
+        if (blockLength == 0) {
+            firstKeys.add(reading);
+            blockOffsets.add(offset);
+        }
+        if (blockLength + entryLength > block.length) {
+            block = Arrays.copyOf(block, (blockLength + entryLength) * 2);
+        }
+        System.arraycopy(entry, 0, block, blockLength, entryLength);
+        blockLength += entryLength;
+        previous = reading;
+        keyCount++;
+    }
+
+    static int sharedPrefix(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < n && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    void encode(String reading, int shared, String[] surfaces) {
+        entryLength = 0;
+        putVarint(shared);
+        putVarint(reading.length() - shared);
+        putChars(reading, shared);
+        putVarint(surfaces.length);
+        for (String surface : surfaces) {
+            // 送り仮名など読みと共通する末尾は文字数だけ書く
+            int suffix = sharedSuffix(reading, surface);
+            putVarint(suffix);
+            putVarint(surface.length() - suffix);
+            putChars(surface.substring(0, surface.length() - suffix), 0);
+        }
+    }
+
+    static int sharedSuffix(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < n && a.charAt(a.length() - 1 - i) == b.charAt(b.length() - 1 - i)) {
+            i++;
+        }
+        return i;
+    }
+
+    void putVarint(int v) {
+        ensure(CompactCodec.MAX_VARINT_BYTES);
+        entryLength = CompactCodec.putVarint(entry, entryLength, v);
+    }
+
+    void putChars(String s, int from) {
+        ensure((s.length() - from) * CompactCodec.MAX_CHAR_BYTES);
+        for (int i = from; i < s.length(); i++) {
+            entryLength = CompactCodec.putChar(entry, entryLength, s.charAt(i));
+        }
+    }
+
+    void ensure(int n) {
+        if (entryLength + n > entry.length) {
+            entry = Arrays.copyOf(entry, Math.max(entry.length * 2, entryLength + n));
+        }
+    }
+
+    void flushBlock() throws IOException {
+        out.write(block, 0, blockLength);
+        offset += blockLength;
+        blockLength = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (blockLength > 0) {
+            flushBlock();
+        }
+        int indexOffset = offset;
+        int[] entryOffsets = new int[firstKeys.size()];
+        for (int i = 0; i < firstKeys.size(); i++) {
+            String key = firstKeys.get(i);
+            entryOffsets[i] = offset;
+            entryLength = 0;
+            putVarint(key.length());
+            putChars(key, 0);
+            out.write(entry, 0, entryLength);
+            out.writeInt(blockOffsets.get(i));
+            offset += entryLength + 4;
+        }
+        for (int entryOffset : entryOffsets) {
+            out.writeInt(entryOffset);
+        }
+        out.writeInt(indexOffset);
+        out.writeInt(firstKeys.size());
+        out.writeInt(keyCount);
+        out.writeInt(MAGIC);
+        out.close();
+    }
+}
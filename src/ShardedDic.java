@@ -0,0 +1,70 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/*
+ * ShardedDicWriterが範囲ごとに書き出したsystem_dic-00.dbなどを、system_dic.shardsの範囲の表で
+ * 読みから選んで引く。各ファイルは初めて引いたときに開くので、使わない範囲は読み込まない。
+ *
+ * 値の形式はBTreeDicと同じくrankedとpoolで指定する。
+ */
+public class ShardedDic implements Closeable {
+    final String[] names;
+    final String[] starts;
+    final BTreeDic[] shards;
+    final String btreeName;
+    final boolean ranked;
+    final SurfacePool pool;
+
+    ShardedDic(String name, String btreeName, boolean ranked, SurfacePool pool) throws IOException {
+        File routing = new File(name + ShardedDicWriter.ROUTING_SUFFIX);
+        List<String> lines = Files.readAllLines(routing.toPath(), StandardCharsets.UTF_8);
+        // 範囲の名前はsystem_dic.shardsと同じディレクトリからの名前
+        File dir = routing.getAbsoluteFile().getParentFile();
+        names = new String[lines.size()];
+        starts = new String[lines.size()];
+        for (int i = 0; i < lines.size(); i++) {
+            String[] ss = lines.get(i).split("\t", 2);
+            names[i] = new File(dir, ss[0]).getPath();
+            starts[i] = ss.length > 1 ? ss[1] : "";
+        }
+        shards = new BTreeDic[names.length];
+        this.btreeName = btreeName;
+        this.ranked = ranked;
+        this.pool = pool;
+    }
+
+    // readingを含む範囲のBTreeDic
+    synchronized BTreeDic shard(String reading) throws IOException {
+        int i = ShardedDicWriter.shardOf(starts, reading);
+        if (shards[i] == null) {
+            shards[i] = new BTreeDic(names[i], btreeName, ranked, pool);
+        }
+        return shards[i];
+    }
+
+    // 全ての表記。なければnull
+    String[] surfaces(String reading) throws IOException {
+        return shard(reading).surfaces(reading);
+    }
+
+    CandidateCodec.Candidates candidates(String reading) throws IOException {
+        return shard(reading).candidates(reading);
+    }
+
+    CandidateCodec.Candidates overflowCandidates(String reading) throws IOException {
+        return shard(reading).overflowCandidates(reading);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (BTreeDic shard : shards) {
+            if (shard != null) {
+                shard.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * system_dic-00.dbなど: 読みを先頭の文字で範囲に分け、範囲ごとに別のファイルのBTreeに書き出す。
+ * 範囲の表はsystem_dic.shardsに書き、ShardedDicで読みから引くファイルを選ぶ。
+ *
+ * 読みは昇順に渡されるので、範囲ごとの候補をまず一時ファイルに書き、範囲を過ぎたらその範囲の
+ * BTreeの構築をスレッドプールに渡す。範囲ごとに別のRecordManagerを使うので、読み出しを続けながら
+ * 前の範囲のBTreeを並行に構築できる。
+ *
+ * system_dic.shardsは一行に「ファイル名\t範囲の最初の読み」。最初の範囲の読みは空文字列。
+ */
+public class ShardedDicWriter implements DicWriter {
+    static final String ROUTING_SUFFIX = ".shards";
+
+    final String name;
+    final String btreeName;
+    // 範囲ごとの最初の読み。starts[0]は""
+    final String[] starts;
+    final boolean bulkLoad;
+    final boolean ranked;
+    final int topK;
+    final SurfacePoolWriter pool;
+    final File tempDir;
+    final ExecutorService executor;
+    final List<Future<?>> builds = new ArrayList<>();
+    final boolean[] submitted;
+    int current = -1;
+    File runFile;
+    DataOutputStream out;
+
+    ShardedDicWriter(String name, String btreeName, String[] starts, int threads, boolean bulkLoad,
+            boolean ranked, int topK, SurfacePoolWriter pool, File tempDir) {
+        this.name = name;
+        this.btreeName = btreeName;
+        this.starts = starts;
+        this.bulkLoad = bulkLoad;
+        this.ranked = ranked;
+        this.topK = topK;
+        this.pool = pool;
+        this.tempDir = tempDir;
+        executor = Executors.newFixedThreadPool(threads);
+        submitted = new boolean[starts.length];
+    }
+
+    static String shardName(String name, int index) {
+        return String.format("%s-%02d", name, index);
+    }
+
+    // readingを含む範囲
+    static int shardOf(String[] starts, String reading) {
+        int i = Arrays.binarySearch(starts, reading);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    /*
+     * 先頭の文字ごとの読みの数を数え、読みの数がなるべく揃うようにshards個の範囲に分ける。
+     * 同じ文字で始まる読みは同じ範囲に入るので、範囲の数はshardsより少ないことがある。
+     */
+    static String[] boundaries(EntrySorter.Cursor cursor, int shards) throws IOException {
+        List<String> chars = new ArrayList<>();
+        List<Integer> counts = new ArrayList<>();
+        String last = null;
+        int total = 0;
+        while (cursor.next()) {
+            String reading = cursor.reading();
+            if (reading.equals(last)) {
+                continue;
+            }
+            last = reading;
+            total++;
+            String head = reading.isEmpty() ? "" : reading.substring(0, Character.charCount(reading.codePointAt(0)));
+            if (chars.isEmpty() || !chars.get(chars.size() - 1).equals(head)) {
+                chars.add(head);
+                counts.add(0);
+            }
+            counts.set(counts.size() - 1, counts.get(counts.size() - 1) + 1);
+        }
+        List<String> starts = new ArrayList<>();
+        starts.add("");
+        long sum = 0;
+        for (int i = 0; i < chars.size(); i++) {
+            // ここまでの読みの数が次の範囲の割り当てに達したら、次の文字から新しい範囲にする
+            if (starts.size() < shards && sum * shards >= (long) total * starts.size() && sum > 0) {
+                starts.add(chars.get(i));
+            }
+            sum += counts.get(i);
+        }
+        return starts.toArray(new String[0]);
+    }
+
+    @Override
+    public void add(String reading, String[] surfaces, int[] costs) throws IOException {
+        int shard = shardOf(starts, reading);
+        if (shard != current) {
+            finishShard();
+            current = shard;
+            runFile = File.createTempFile("gendic", ".shard", tempDir);
+            runFile.deleteOnExit();
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile)));
+        }
+        if (pool != null) {
+            // 表記のIDは分けない場合と同じ順に振る
+            for (String surface : surfaces) {
+                pool.id(surface);
+            }
+        }
+        out.writeUTF(reading);
+        out.writeInt(surfaces.length);
+        for (int i = 0; i < surfaces.length; i++) {
+            out.writeUTF(surfaces[i]);
+            out.writeInt(costs[i]);
+        }
+    }
+
+    // 書き終えた範囲のBTreeを構築する
+    void finishShard() throws IOException {
+        if (current < 0) {
+            return;
+        }
+        out.close();
+        submit(current, runFile);
+        out = null;
+        runFile = null;
+    }
+
+    void submit(int index, File file) {
+        submitted[index] = true;
+        builds.add(executor.submit(() -> {
+            build(index, file);
+            return null;
+        }));
+    }
+
+    // fileがnullなら空のBTreeを作る
+    void build(int index, File file) throws IOException {
+        BTreeDicWriter writer = new BTreeDicWriter(shardName(name, index), btreeName, bulkLoad, ranked, topK,
+                pool);
+        if (file != null) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                while (true) {
+                    String reading;
+                    try {
+                        reading = in.readUTF();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    String[] surfaces = new String[in.readInt()];
+                    int[] costs = new int[surfaces.length];
+                    for (int i = 0; i < surfaces.length; i++) {
+                        surfaces[i] = in.readUTF();
+                        costs[i] = in.readInt();
+                    }
+                    writer.add(reading, surfaces, costs);
+                }
+            }
+            file.delete();
+        }
+        writer.close();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finishShard();
+        for (int i = 0; i < starts.length; i++) {
+            if (!submitted[i]) {
+                submit(i, null);
+            }
+        }
+        try {
+            for (Future<?> build : builds) {
+                build.get();
+            }
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+
+        BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(new File(name + ROUTING_SUFFIX)), "UTF-8"));
+        for (int i = 0; i < starts.length; i++) {
+            // 開く側がsystem_dic.shardsのディレクトリから探せるよう、ディレクトリを除いた名前を書く
+            bw.write(new File(shardName(name, i)).getName() + "\t" + starts[i] + "\n");
+        }
+        bw.close();
+    }
+}
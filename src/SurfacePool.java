@@ -0,0 +1,62 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * SurfacePoolWriterが書き出したsystem_dic.poolをメモリマップし、IDから表記を引く。
+ * 表記はgetで呼ばれたときに初めて復元する。
+ */
+public class SurfacePool implements Closeable {
+    final FileChannel channel;
+    final int count;
+    final IntBuffer offsets;
+    final ByteBuffer data;
+
+    SurfacePool(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (buf.getInt(0) != SurfacePoolWriter.MAGIC) {
+            throw new IOException("表記の表ではない: " + file);
+        }
+        count = buf.getInt(4);
+        int dataLength = buf.getInt(8);
+        int pos = 12;
+        offsets = TrieDic.slice(buf, pos, (count + 1) * 4).asIntBuffer();
+        pos += (count + 1) * 4;
+        data = TrieDic.slice(buf, pos, dataLength);
+    }
+
+    int size() {
+        return count;
+    }
+
+    String get(int id) {
+        ByteBuffer b = data.duplicate();
+        b.limit(offsets.get(id + 1));
+        b.position(offsets.get(id));
+        StringBuilder sb = new StringBuilder(b.remaining());
+        while (b.hasRemaining()) {
+            sb.append(CompactCodec.getChar(b));
+        }
+        return sb.toString();
+    }
+
+    // SurfacePoolWriter.encodeIdsで詰めたIDの並び
+    static int[] decodeIds(byte[] value) {
+        ByteBuffer b = ByteBuffer.wrap(value);
+        int[] ids = new int[CompactCodec.getVarint(b)];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = CompactCodec.getVarint(b);
+        }
+        return ids;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
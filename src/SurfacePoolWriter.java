@@ -0,0 +1,83 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+ * system_dic.pool: 辞書の表記を重複なく一度だけ書き出し、0からのIDを振る。読み出しはSurfacePool。
+ *
+ * BTreeDicWriterとTrieDicWriterは表記の代わりにidで得たIDを値に入れる。
+ * 同じ表記には同じIDを返すので、複数の出力形式で共有できる。
+ *
+ * 形式(ビッグエンディアン)
+ *   int MAGIC, int count, int dataLength
+ *   int[count + 1] IDごとの表記の開始位置
+ *   byte[dataLength] CompactCodecの形式の表記の文字
+ */
+public class SurfacePoolWriter {
+    static final int MAGIC = 0x504f4f4c; // "POOL"
+
+    final File file;
+    final CharArena surfaces = new CharArena();
+
+    SurfacePoolWriter(File file) {
+        this.file = file;
+    }
+
+    // ShardedDicWriterの範囲ごとのスレッドからも呼ばれる
+    synchronized int id(String surface) {
+        return surfaces.intern(surface);
+    }
+
+    void close() throws IOException {
+        int count = surfaces.size();
+        int[] offsets = new int[count + 1];
+        for (int id = 0; id < count; id++) {
+            offsets[id + 1] = offsets[id] + encodedLength(id);
+        }
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(count);
+        out.writeInt(offsets[count]);
+        for (int offset : offsets) {
+            out.writeInt(offset);
+        }
+        byte[] buf = new byte[64];
+        for (int id = 0; id < count; id++) {
+            int length = surfaces.length(id);
+            if (length * CompactCodec.MAX_CHAR_BYTES > buf.length) {
+                buf = new byte[length * CompactCodec.MAX_CHAR_BYTES];
+            }
+            int pos = 0;
+            int start = surfaces.offsets[id];
+            for (int i = 0; i < length; i++) {
+                pos = CompactCodec.putChar(buf, pos, surfaces.chars[start + i]);
+            }
+            out.write(buf, 0, pos);
+        }
+        out.close();
+    }
+
+    int encodedLength(int id) {
+        byte[] buf = new byte[CompactCodec.MAX_CHAR_BYTES];
+        int length = 0;
+        int start = surfaces.offsets[id];
+        for (int i = 0; i < surfaces.length(id); i++) {
+            length += CompactCodec.putChar(buf, 0, surfaces.chars[start + i]);
+        }
+        return length;
+    }
+
+    // IDの並びを可変長整数で詰める。先頭は個数
+    static byte[] encodeIds(int[] ids, int from, int to) {
+        byte[] buf = new byte[(to - from + 1) * CompactCodec.MAX_VARINT_BYTES];
+        int pos = CompactCodec.putVarint(buf, 0, to - from);
+        for (int i = from; i < to; i++) {
+            pos = CompactCodec.putVarint(buf, pos, ids[i]);
+        }
+        return Arrays.copyOf(buf, pos);
+    }
+}
@@ -0,0 +1,31 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+
+/*
+ * system_dic.txt: 一行に「読み\t表記\t表記...」を書き出す。
+ */
+public class TextDicWriter implements DicWriter {
+    final BufferedWriter bw;
+
+    TextDicWriter(File file) throws IOException {
+        bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+    }
+
+    @Override
+    public void add(String reading, String[] surfaces, int[] costs) throws IOException {
+        bw.write(reading);
+        for (String surface : surfaces) {
+            bw.write('\t');
+            bw.write(surface);
+        }
+        bw.write('\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+        bw.close();
+    }
+}
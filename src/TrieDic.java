@@ -0,0 +1,192 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * TrieDicWriterが書き出したsystem_dic.datをメモリマップして引く。
+ *
+ * exactMatchとcommonPrefixSearchはオブジェクトを生成しない。戻り値の番号から
+ * surfaceCountとsurfaceで表記を取り出す。表記の表を使う形式では、surfaceIdで得た
+ * IDから必要なときだけ表記の表を引く。
+ */
+public class TrieDic implements Closeable {
+    final FileChannel channel;
+    final int charMin;
+    final int charMax;
+    final int arraySize;
+    final int keyCount;
+    final ShortBuffer codes;
+    final IntBuffer base;
+    final IntBuffer check;
+    final IntBuffer valueOffsets;
+    final IntBuffer surfaceOffsets;
+    final CharBuffer chars;
+    // 表記の表を使う形式のときだけ
+    final IntBuffer surfaceIds;
+    final SurfacePool pool;
+
+    TrieDic(File file) throws IOException {
+        this(file, null);
+    }
+
+    // 表記の表を使う形式ならpoolを渡す
+    TrieDic(File file, SurfacePool pool) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        int magic = buf.getInt(0);
+        if (magic != TrieDicWriter.MAGIC && magic != TrieDicWriter.MAGIC_POOLED) {
+            throw new IOException("ダブル配列の辞書ではない: " + file);
+        }
+        if (magic == TrieDicWriter.MAGIC_POOLED && pool == null) {
+            throw new IOException("表記の表が必要: " + file);
+        }
+        this.pool = pool;
+        charMin = buf.getInt(4);
+        charMax = buf.getInt(8);
+        arraySize = buf.getInt(12);
+        keyCount = buf.getInt(16);
+        int surfaceCount = buf.getInt(20);
+        int charLength = buf.getInt(24);
+        int pos = 28;
+        int tableLength = Math.max(charMax - charMin + 1, 0);
+        codes = slice(buf, pos, tableLength * 2).asShortBuffer();
+        pos += (tableLength + tableLength % 2) * 2;
+        base = slice(buf, pos, arraySize * 4).asIntBuffer();
+        pos += arraySize * 4;
+        check = slice(buf, pos, arraySize * 4).asIntBuffer();
+        pos += arraySize * 4;
+        valueOffsets = slice(buf, pos, (keyCount + 1) * 4).asIntBuffer();
+        pos += (keyCount + 1) * 4;
+        if (magic == TrieDicWriter.MAGIC_POOLED) {
+            surfaceIds = slice(buf, pos, surfaceCount * 4).asIntBuffer();
+            surfaceOffsets = null;
+            chars = null;
+            return;
+        }
+        surfaceIds = null;
+        surfaceOffsets = slice(buf, pos, (surfaceCount + 1) * 4).asIntBuffer();
+        pos += (surfaceCount + 1) * 4;
+        chars = slice(buf, pos, charLength * 2).asCharBuffer();
+    }
+
+    static ByteBuffer slice(ByteBuffer buf, int pos, int length) {
+        ByteBuffer dup = buf.duplicate();
+        dup.position(pos);
+        dup.limit(pos + length);
+        return dup.slice();
+    }
+
+    int keyCount() {
+        return keyCount;
+    }
+
+    int code(char ch) {
+        if (ch < charMin || ch > charMax) {
+            return 0;
+        }
+        return codes.get(ch - charMin) & 0xffff;
+    }
+
+    // 読みに一致するキーの番号。なければ-1
+    int exactMatch(CharSequence key) {
+        return exactMatch(key, 0, key.length());
+    }
+
+    int exactMatch(CharSequence text, int start, int end) {
+        int s = 0;
+        for (int i = start; i < end; i++) {
+            int c = code(text.charAt(i));
+            if (c == 0) {
+                return -1;
+            }
+            int t = base.get(s) + c;
+            if (t >= arraySize || check.get(t) != s) {
+                return -1;
+            }
+            s = t;
+        }
+        return terminal(s);
+    }
+
+    // ノードsで終わるキーの番号。なければ-1
+    int terminal(int s) {
+        int t = base.get(s);
+        if (t < 0 || t >= arraySize || check.get(t) != s) {
+            return -1;
+        }
+        return -base.get(t) - 1;
+    }
+
+    /*
+     * text[start...]の接頭辞になっている読みを短い順に探し、キーの番号をids、長さをlengthsに入れる。
+     * 見つかった数を返す。ids.lengthより多くは探さない。
+     */
+    int commonPrefixSearch(CharSequence text, int start, int[] ids, int[] lengths) {
+        int found = 0;
+        int s = 0;
+        for (int i = start; i <= text.length() && found < ids.length; i++) {
+            int id = terminal(s);
+            if (id >= 0 && i > start) {
+                ids[found] = id;
+                lengths[found] = i - start;
+                found++;
+            }
+            if (i == text.length()) {
+                break;
+            }
+            int c = code(text.charAt(i));
+            if (c == 0) {
+                break;
+            }
+            int t = base.get(s) + c;
+            if (t < 0 || t >= arraySize || check.get(t) != s) {
+                break;
+            }
+            s = t;
+        }
+        return found;
+    }
+
+    int surfaceCount(int id) {
+        return valueOffsets.get(id + 1) - valueOffsets.get(id);
+    }
+
+    // 表記の表でのID。表記の表を使わない形式では-1
+    int surfaceId(int id, int index) {
+        if (surfaceIds == null) {
+            return -1;
+        }
+        return surfaceIds.get(valueOffsets.get(id) + index);
+    }
+
+    String surface(int id, int index) {
+        int n = valueOffsets.get(id) + index;
+        if (surfaceIds != null) {
+            return pool.get(surfaceIds.get(n));
+        }
+        int from = surfaceOffsets.get(n);
+        int to = surfaceOffsets.get(n + 1);
+        char[] cs = new char[to - from];
+        chars.get(from, cs);
+        return new String(cs);
+    }
+
+    String[] surfaces(int id) {
+        String[] surfaces = new String[surfaceCount(id)];
+        for (int i = 0; i < surfaces.length; i++) {
+            surfaces[i] = surface(id, i);
+        }
+        return surfaces;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
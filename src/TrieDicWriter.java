@@ -0,0 +1,171 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/*
+ * system_dic.dat: 読みのダブル配列と表記の表を一つのファイルに書き出す。読み出しはTrieDic。
+ *
+ * 形式(ビッグエンディアン)
+ *   int MAGIC, int charMin, int charMax, int arraySize, int keyCount, int surfaceCount,
+ *   int charLength
+ *   short[charMax - charMin + 1] 文字コード表(偶数個になるよう0で埋める)
+ *   int[arraySize] base, int[arraySize] check
+ *   int[keyCount + 1] キー番号ごとの表記の開始番号
+ *   int[surfaceCount + 1] 表記ごとの文字の開始位置
+ *   char[charLength] 表記の文字
+ *
+ * 表記の表(SurfacePoolWriter)を使う場合はMAGIC_POOLEDで始まり、表記の開始位置と文字の
+ * 代わりにint[surfaceCount] 表記のIDを書く。charLengthは0。
+ */
+public class TrieDicWriter implements DicWriter {
+    static final int MAGIC = 0x44415431; // "DAT1"
+    static final int MAGIC_POOLED = 0x44415450; // "DATP"
+
+    final File file;
+    final CharArena keys = new CharArena();
+    final boolean[] used = new boolean[Character.MAX_VALUE + 1];
+    int[] valueOffsets = new int[1 << 10];
+    int[] surfaceOffsets = new int[1 << 10];
+    int surfaceCount = 0;
+    int charLength = 0;
+    // 表記の文字はいったん一時ファイルに書く
+    final File charFile;
+    final DataOutputStream charOut;
+    // poolがあれば文字の代わりに表記のIDを持つ
+    final SurfacePoolWriter pool;
+    int[] surfaceIds;
+
+    TrieDicWriter(File file) throws IOException {
+        this(file, null);
+    }
+
+    TrieDicWriter(File file, SurfacePoolWriter pool) throws IOException {
+        this.file = file;
+        this.pool = pool;
+        if (pool != null) {
+            charFile = null;
+            charOut = null;
+            surfaceIds = new int[1 << 10];
+        } else {
+            charFile = File.createTempFile("gendic", ".chars", file.getAbsoluteFile().getParentFile());
+            charFile.deleteOnExit();
+            charOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(charFile)));
+        }
+    }
+
+    @Override
+    public void add(String reading, String[] surfaces, int[] costs) throws IOException {
+        int key = keys.intern(reading);
+        if (key != keys.size() - 1) {
+            throw new IllegalArgumentException("読みが重複している: " + reading);
+        }
+        for (int i = 0; i < reading.length(); i++) {
+            used[reading.charAt(i)] = true;
+        }
+        if (key + 2 > valueOffsets.length) {
+            valueOffsets = Arrays.copyOf(valueOffsets, valueOffsets.length * 2);
+        }
+        valueOffsets[key] = surfaceCount;
+        for (String surface : surfaces) {
+            if (pool != null) {
+                if (surfaceCount + 1 > surfaceIds.length) {
+                    surfaceIds = Arrays.copyOf(surfaceIds, surfaceIds.length * 2);
+                }
+                surfaceIds[surfaceCount++] = pool.id(surface);
+                continue;
+            }
+            if (surfaceCount + 2 > surfaceOffsets.length) {
+                surfaceOffsets = Arrays.copyOf(surfaceOffsets, surfaceOffsets.length * 2);
+            }
+            surfaceOffsets[surfaceCount++] = charLength;
+            charOut.writeChars(surface);
+            charLength += surface.length();
+        }
+        valueOffsets[key + 1] = surfaceCount;
+        if (pool == null) {
+            surfaceOffsets[surfaceCount] = charLength;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (charOut != null) {
+            charOut.close();
+        }
+
+        // 使われている文字に1からのコードを振る
+        int charMin = 0;
+        int charMax = -1;
+        for (int c = 0; c < used.length; c++) {
+            if (used[c]) {
+                if (charMax < 0) {
+                    charMin = c;
+                }
+                charMax = c;
+            }
+        }
+        int[] codeTable = new int[Math.max(charMax - charMin + 1, 0)];
+        int code = 1;
+        for (int c = charMin; c <= charMax; c++) {
+            if (used[c]) {
+                codeTable[c - charMin] = code++;
+            }
+        }
+
+        DoubleArrayBuilder builder = new DoubleArrayBuilder(keys, keys.size(), charMin, codeTable);
+        builder.build();
+
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        out.writeInt(pool != null ? MAGIC_POOLED : MAGIC);
+        out.writeInt(charMin);
+        out.writeInt(charMax);
+        out.writeInt(builder.size);
+        out.writeInt(keys.size());
+        out.writeInt(surfaceCount);
+        out.writeInt(charLength);
+        for (int c : codeTable) {
+            out.writeShort(c);
+        }
+        if (codeTable.length % 2 != 0) {
+            out.writeShort(0);
+        }
+        for (int i = 0; i < builder.size; i++) {
+            out.writeInt(builder.base[i]);
+        }
+        for (int i = 0; i < builder.size; i++) {
+            out.writeInt(builder.check[i]);
+        }
+        if (keys.size() == 0) {
+            valueOffsets[0] = 0;
+        }
+        for (int i = 0; i <= keys.size(); i++) {
+            out.writeInt(valueOffsets[i]);
+        }
+        if (pool != null) {
+            for (int i = 0; i < surfaceCount; i++) {
+                out.writeInt(surfaceIds[i]);
+            }
+            out.close();
+            return;
+        }
+        for (int i = 0; i <= surfaceCount; i++) {
+            out.writeInt(surfaceOffsets[i]);
+        }
+        InputStream in = new BufferedInputStream(new FileInputStream(charFile), 1 << 16);
+        byte[] buf = new byte[1 << 16];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            out.write(buf, 0, n);
+        }
+        in.close();
+        out.close();
+        charFile.delete();
+    }
+}
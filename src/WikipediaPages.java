@@ -0,0 +1,126 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/*
+ * Wikipediaのダンプファイルをページ単位で読む(StAX)。
+ *
+ * <ns>が0の記事で<redirect>のないものだけ、記事名と<text>の本文を渡す。
+ * 本文の実体参照(&lt;など)はXMLの解析で一度だけ元の文字に戻る。
+ * テンプレートや利用者ページ、リダイレクトの本文は文字列にしない。
+ */
+public class WikipediaPages {
+
+    interface PageHandler {
+        void page(String title, String text) throws IOException;
+    }
+
+    /*
+     * JDKの安全のための既定値では&lt;などの定義済みの実体参照もjdk.xml.totalEntitySizeLimit(既定値は5000万文字)に
+     * 数えるので、ダンプファイル全体を読むと途中で止まる。ダンプファイルは信頼できる入力なので上限をなくす。
+     */
+    static XMLInputFactory factory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty("http://www.oracle.com/xml/jaxp/properties/totalEntitySizeLimit", "0");
+        factory.setProperty("http://www.oracle.com/xml/jaxp/properties/maxGeneralEntitySizeLimit", "0");
+        factory.setProperty("http://www.oracle.com/xml/jaxp/properties/maxParameterEntitySizeLimit", "0");
+        return factory;
+    }
+
+    static void read(InputStream in, PageHandler handler) throws IOException {
+        try {
+            XMLStreamReader reader = factory().createXMLStreamReader(in, "UTF-8");
+            String title = null;
+            int ns = -1;
+            boolean redirect = false;
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                switch (reader.getLocalName()) {
+                    case "page":
+                        title = null;
+                        ns = -1;
+                        redirect = false;
+                        break;
+                    case "title":
+                        title = reader.getElementText();
+                        break;
+                    case "ns":
+                        ns = Integer.parseInt(reader.getElementText().strip());
+                        break;
+                    case "redirect":
+                        redirect = true;
+                        break;
+                    case "text":
+                        if (ns == 0 && !redirect) {
+                            handler.page(title, reader.getElementText());
+                        }
+                        break;
+                }
+            }
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            in.close();
+        }
+    }
+
+    /*
+     * markersを含む記事の本文を一行ずつhandlerに渡し、結果をoutに加える。
+     * titlesには新しく加わった結果ごとに最初に見つかった記事名を記録する。
+     */
+    static void extract(InputStream in, BytePatterns markers, DumpScanner.LineHandler handler,
+            Set<String> out, Map<String, String> titles) throws IOException {
+        read(in, (title, text) -> {
+            if (markers.foundIn(text)) {
+                extractPage(title, text, handler, out, titles);
+            }
+        });
+    }
+
+    static void extractPage(String title, String text, DumpScanner.LineHandler handler, Set<String> out,
+            Map<String, String> titles) throws IOException {
+        Set<String> found = new TreeSet<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            if (end < 0) {
+                end = text.length();
+            }
+            handler.handle(text.substring(start, end), found);
+            start = end + 1;
+        }
+        for (String s : found) {
+            if (out.add(s)) {
+                titles.put(s, title);
+            }
+        }
+    }
+
+    /*
+     * ダンプファイルで実体参照で書かれる文字(& < > ")か。
+     * 実体参照のままの行では&、本文を戻した行では元の文字で判定できる。
+     */
+    static boolean isMarkup(char ch) {
+        return ch == '&' || ch == '<' || ch == '>' || ch == '"';
+    }
+
+    // isMarkupの文字が最初に現れる位置。なければ-1
+    static int indexOfMarkup(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (isMarkup(s.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,223 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/*
+ * Wikipediaのダンプファイルを一度だけ読み、行を複数の抽出処理に振り分ける。
+ *
+ * 抽出処理ごとにスレッドと上限のあるキューを持ち、読み込みのスレッドは目印を含む行
+ * (--pagesでは記事の本文)だけをまとめてキューに入れる。抽出処理はそれぞれの結果を自分の出力ファイルに書く。
+ * 出力はExtractWikipediaWordとWikipediaYomiganaを別々に実行した場合と同じ。
+ */
+public class WikipediaPipeline {
+
+    static final int BATCH_SIZE = 1024;
+    static final int QUEUE_SIZE = 64;
+    // 読み終わりを知らせる空のまとまり
+    static final List<String[]> END = Collections.emptyList();
+
+    /*
+     * 抽出処理。markersのどれかを含む行をhandlerに渡し、結果をoutputに書く。
+     * 記事の本文を受け取った場合は記事名をtitleOutputに書く。
+     */
+    static class Extractor implements Runnable {
+        final String output;
+        final String titleOutput;
+        final BytePatterns markers;
+        final DumpScanner.LineHandler handler;
+        // {記事名, 本文}か{null, 行}
+        final BlockingQueue<List<String[]>> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        final Set<String> result = new TreeSet<>();
+        final Map<String, String> titles = new TreeMap<>();
+        List<String[]> batch = new ArrayList<>(BATCH_SIZE);
+        Exception error;
+
+        Extractor(String output, String titleOutput, BytePatterns markers,
+                DumpScanner.LineHandler handler) {
+            this.output = output;
+            this.titleOutput = titleOutput;
+            this.markers = markers;
+            this.handler = handler;
+        }
+
+        // titleがnullならtextは一行
+        void offer(String title, String text) throws InterruptedException {
+            if (!markers.foundIn(text)) {
+                return;
+            }
+            batch.add(new String[] { title, text });
+            if (batch.size() == BATCH_SIZE) {
+                queue.put(batch);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+
+        void finish() throws InterruptedException {
+            if (!batch.isEmpty()) {
+                queue.put(batch);
+            }
+            queue.put(END);
+        }
+
+        @Override
+        public void run() {
+            try {
+                List<String[]> items;
+                while ((items = queue.take()) != END) {
+                    // 失敗した後も読み込みのスレッドが止まらないよう最後まで取り出す
+                    if (error != null) {
+                        continue;
+                    }
+                    try {
+                        for (String[] item : items) {
+                            if (item[0] == null) {
+                                handler.handle(item[1], result);
+                            } else {
+                                WikipediaPages.extractPage(item[0], item[1], handler, result, titles);
+                            }
+                        }
+                    } catch (Exception e) {
+                        error = e;
+                    }
+                }
+            } catch (InterruptedException e) {
+                error = e;
+            }
+        }
+
+        void write() throws IOException {
+            BufferedWriter bw = new BufferedWriter(
+                    new OutputStreamWriter(new FileOutputStream(new File(output)), "UTF-8"));
+            for (String set : result) {
+                bw.write(set + "\n");
+            }
+            bw.flush();
+            bw.close();
+            if (titles.isEmpty()) {
+                return;
+            }
+            BufferedWriter bwTitle = new BufferedWriter(
+                    new OutputStreamWriter(new FileOutputStream(new File(titleOutput)), "UTF-8"));
+            for (Map.Entry<String, String> entry : titles.entrySet()) {
+                bwTitle.write(entry.getKey() + "\t" + entry.getValue() + "\n");
+            }
+            bwTitle.flush();
+            bwTitle.close();
+        }
+    }
+
+    static List<Extractor> extractors() {
+        List<Extractor> list = new ArrayList<>();
+        list.add(new Extractor("WikipediaWord.txt", "WikipediaWordTitle.txt",
+                ExtractWikipediaWord.MARKERS, ExtractWikipediaWord::handleLine));
+        list.add(new Extractor("WikipediaYomigana.txt", "WikipediaYomiganaTitle.txt",
+                WikipediaYomigana.MARKERS, WikipediaYomigana::handleLine));
+        return list;
+    }
+
+    // 全ての抽出処理の目印のどれかを含む行
+    static BytePatterns union(List<Extractor> extractors) {
+        List<String> strings = new ArrayList<>();
+        for (Extractor extractor : extractors) {
+            Collections.addAll(strings, extractor.markers.strings);
+        }
+        return new BytePatterns(strings.toArray(new String[0]));
+    }
+
+    static void dispatch(String title, String text, List<Extractor> extractors) throws IOException {
+        try {
+            for (Extractor extractor : extractors) {
+                extractor.offer(title, text);
+            }
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    static public void main(String argv[]) throws Exception {
+
+        // 入力の指定はExtractWikipediaWord、WikipediaYomiganaと同じ
+        boolean mmap = false;
+        boolean bz2 = false;
+        boolean multistream = false;
+        boolean pages = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < argv.length; i++) {
+            switch (argv[i]) {
+                case "--mmap":
+                    mmap = true;
+                    break;
+                case "--bz2":
+                    bz2 = true;
+                    break;
+                case "--multistream":
+                    multistream = true;
+                    break;
+                case "--pages":
+                    pages = true;
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(argv[++i]);
+                    break;
+                default:
+                    System.err.println("不明なオプション: " + argv[i]);
+                    System.exit(1);
+            }
+        }
+
+        List<Extractor> extractors = extractors();
+        List<Thread> workers = new ArrayList<>();
+        for (Extractor extractor : extractors) {
+            Thread worker = new Thread(extractor, extractor.output);
+            worker.start();
+            workers.add(worker);
+        }
+
+        try {
+            if (pages) {
+                WikipediaPages.read(DumpScanner.open(bz2, multistream, threads),
+                        (title, text) -> dispatch(title, text, extractors));
+            } else if (mmap && !bz2 && !multistream) {
+                // 目印を含む行だけをバイト列のまま探す
+                DumpScanner.scan(DumpScanner.DUMP, 1, union(extractors),
+                        (line, out) -> dispatch(null, line, extractors));
+            } else {
+                try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                        DumpScanner.open(bz2, multistream, threads), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = br.readLine()) != null) {
+                        dispatch(null, line, extractors);
+                    }
+                }
+            }
+        } finally {
+            // 読み込みに失敗しても抽出処理のスレッドを終わらせる
+            for (Extractor extractor : extractors) {
+                extractor.finish();
+            }
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        for (Extractor extractor : extractors) {
+            if (extractor.error != null) {
+                throw extractor.error;
+            }
+            extractor.write();
+        }
+    }
+}
@@ -3,18 +3,24 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 public class WikipediaYomigana {
 
     static Set<String> setDict = new TreeSet<>();
 
+    static final String YOMIGANA = "{{読み仮名";
+    // --mmap指定時にバイト列のまま探す行の目印
+    static final BytePatterns MARKERS = new BytePatterns(YOMIGANA);
+
     // 全角ひらがな変換
     public static char toWideHiragana(char ch) {
         if (ch >= 'ァ' && ch <= 'ヶ') {
@@ -32,23 +38,34 @@ public class WikipediaYomigana {
         return sb.toString();
     }
 
-    static void processYomiganaLine(String line) {
+    static void processYomiganaLine(String line, Set<String> dict) {
         line = line.replace("'''", "");
         line = line.replace("''", "");
 
-        Pattern p = Pattern.compile("\\{\\{読み仮名[^\\}\\}]*\\}\\}");
-        Matcher m = p.matcher(line);
         String reading;
         String surface;
-        while (m.find()) {
-            String s = m.group().strip();
+        // 「{{読み仮名」から最初の'}'までが「}}」で閉じているもの。
+        // 正規表現\{\{読み仮名[^\}\}]*\}\}で探すのと同じ
+        int from = 0;
+        while (true) {
+            int start = line.indexOf(YOMIGANA, from);
+            if (start < 0) {
+                break;
+            }
+            int close = line.indexOf('}', start + YOMIGANA.length());
+            if (close < 0 || close + 1 >= line.length() || line.charAt(close + 1) != '}') {
+                from = start + 1;
+                continue;
+            }
+            from = close + 2;
+            String s = line.substring(start, close + 2).strip();
             int pos = s.indexOf("|");
             if (pos < 0) {
                 continue;
             }
             s = s.substring(pos + 1).strip();
             char ch = s.charAt(0);
-            if (ch == '&') {
+            if (WikipediaPages.isMarkup(ch)) {
                 continue;
             }
             if (ch == '{') {
@@ -90,8 +107,7 @@ public class WikipediaYomigana {
             if (surface.length() == 0) {
                 continue;
             }
-            if (!surface
-                    .matches("^[\\p{InHiragana}\\p{InKatakana}\\p{InCJKunifiedideographs}々]+$")) {
+            if (!CharClass.isAllKanaKanji(surface)) {
                 continue;
             }
             if (surface.contains("・")) {
@@ -114,7 +130,7 @@ public class WikipediaYomigana {
             if (index >= 0) {
                 reading = reading.substring(0, index);
             }
-            index = reading.indexOf("&");
+            index = WikipediaPages.indexOfMarkup(reading);
             if (index >= 0) {
                 reading = reading.substring(0, index);
             }
@@ -124,7 +140,7 @@ public class WikipediaYomigana {
             }
 
             reading = toWideHiragana(reading);
-            if (!reading.matches("^[ぁ-ゖー]+$")) {
+            if (!CharClass.isAllHiragana(reading)) {
                 continue;
             }
             // 読みが一文字以下
@@ -136,33 +152,187 @@ public class WikipediaYomigana {
                 continue;
             }
             // 登録
-            setDict.add(reading + "\t" + surface);
+            dict.add(reading + "\t" + surface);
+        }
+    }
+
+    // ダンプファイルの一行
+    static void handleLine(String line, Set<String> dict) {
+        line = line.strip();
+        // --pagesでは実体参照が戻っている
+        if (line.startsWith("&lt;!--") || line.startsWith("<!--")) {
+            return;
         }
+        if (line.contains("{{読み仮名")) {
+            processYomiganaLine(line, dict);
+        }
+    }
+
+    // --costs指定時のコスト。Sudachiのユーザ辞書での名詞のコストは5000～9000を推奨している
+    static final int MAX_COST = 9000;
+    static final int MIN_COST = 5000;
+    // 出現回数がe倍になるごとに下げるコスト
+    static final int COST_PER_LOG = 400;
+
+    // 記事の本文での出現回数からコストを決める。出現しなければMAX_COST
+    static int cost(int count) {
+        return Math.max(MIN_COST, MAX_COST - (int) Math.round(COST_PER_LOG * Math.log1p(count)));
+    }
+
+    // 記事の本文で、かな漢字が続く部分の長さmaxLength以下の部分文字列をbytesバイトの表で数える
+    static CountMinSketch countSurfaces(InputStream in, long bytes, int maxLength) throws IOException {
+        CountMinSketch sketch = new CountMinSketch(bytes);
+        WikipediaPages.read(in, (title, text) -> sketch.addSubstrings(text, CharClass.KANA_BLOCK | CharClass.KANJI,
+                maxLength));
+        return sketch;
+    }
+
+    /*
+     * 「読み\t表記」の各行に、表記の出現回数から決めたコストの列を加える。
+     * maxLengthより長い表記は数えていないので、表を引かずにMAX_COSTにする。
+     * 引くと同じカウンタを共有する他の文字列の回数が返る。
+     */
+    static void addCosts(File file, CountMinSketch sketch, int maxLength) throws IOException {
+        BufferedWriter bw = Checkpoint.openTemp(file);
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String surface = line.substring(line.indexOf('\t') + 1);
+                int cost = surface.length() > maxLength ? MAX_COST : cost(sketch.estimate(surface));
+                bw.write(line + "\t" + cost + "\n");
+            }
+        }
+        bw.close();
+        Checkpoint.commit(file);
     }
 
     static public void main(String argv[]) throws Exception {
 
-        BufferedReader br = new BufferedReader(new InputStreamReader(
-                new FileInputStream(new File("data/jawiki-latest-pages-articles.xml")), "UTF-8"));
+        // --parallel指定時はダンプファイルを範囲に分けて並列に読む
+        boolean parallel = false;
+        // --mmap指定時はダンプファイルをメモリマップし、MARKERSを含む行だけを読む
+        boolean mmap = false;
+        // --bz2、--multistream指定時は圧縮されたダンプファイルを展開しながら読む
+        boolean bz2 = false;
+        boolean multistream = false;
+        // --pages指定時は記事の本文だけを読み、結果ごとに記事名を記録する
+        boolean pages = false;
+        // --checkpoint指定時は途中経過をディレクトリに保存し、--resumeでそこから再開する
+        File checkpointDir = null;
+        boolean resume = false;
+        // --costs指定時は記事の本文での表記の出現回数を数え、WikipediaYomigana.txtにコストの列を加える
+        boolean costs = false;
+        long sketchBytes = 64L * 1024 * 1024;
+        // --max-length N: 数える部分文字列の長さの上限。これより長い表記はコストをMAX_COSTにする
+        int maxLength = 12;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < argv.length; i++) {
+            switch (argv[i]) {
+                case "--parallel":
+                    parallel = true;
+                    break;
+                case "--mmap":
+                    mmap = true;
+                    break;
+                case "--bz2":
+                    bz2 = true;
+                    break;
+                case "--multistream":
+                    multistream = true;
+                    break;
+                case "--pages":
+                    pages = true;
+                    break;
+                case "--checkpoint":
+                    checkpointDir = new File(argv[++i]);
+                    break;
+                case "--resume":
+                    resume = true;
+                    break;
+                case "--costs":
+                    costs = true;
+                    break;
+                case "--sketch-mb":
+                    sketchBytes = Long.parseLong(argv[++i]) * 1024 * 1024;
+                    break;
+                case "--max-length":
+                    maxLength = Integer.parseInt(argv[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(argv[++i]);
+                    break;
+                default:
+                    System.err.println("不明なオプション: " + argv[i]);
+                    System.exit(1);
+            }
+        }
+
+        if (resume && checkpointDir == null) {
+            System.err.println("--resumeには--checkpointが必要");
+            System.exit(1);
+        }
+        if (checkpointDir != null && (parallel || mmap || bz2 || multistream || pages)) {
+            System.err.println("--checkpointは展開済みのダンプファイルを逐次処理する場合にだけ使える");
+            System.exit(1);
+        }
 
-        String line;
-        while ((line = br.readLine()) != null) {
-            line = line.strip();
-            if (line.startsWith("&lt;!--")) {
-                continue;
+        // 段階ごとの時間と処理した行の数。終了時にWikipediaYomigana.metrics.jsonに書き出す
+        BuildMetrics metrics = new BuildMetrics("WikipediaYomigana");
+        DumpScanner.LineHandler handler = metrics.countLines("lines", WikipediaYomigana::handleLine);
+        metrics.stage("scan");
+
+        Map<String, String> titles = null;
+        Checkpoint checkpoint = null;
+        if (checkpointDir != null) {
+            checkpoint = resume ? Checkpoint.resume(checkpointDir) : Checkpoint.create(checkpointDir);
+            checkpoint.scan(DumpScanner.DUMP, handler);
+        } else if (pages) {
+            titles = new TreeMap<>();
+            WikipediaPages.extract(DumpScanner.open(bz2, multistream, threads), MARKERS, handler, setDict, titles);
+        } else if ((parallel || mmap) && !bz2 && !multistream) {
+            setDict = DumpScanner.scan(DumpScanner.DUMP, parallel ? threads : 1, mmap ? MARKERS : null, handler);
+        } else {
+            // ダンプファイル読み出し用
+            DumpScanner.readLines(DumpScanner.open(bz2, multistream, threads), handler, setDict);
+        }
+
+        metrics.count("scan", "lines", metrics.counter("lines"));
+
+        metrics.stage("write");
+        if (checkpoint != null) {
+            // ランをマージして出力する
+            checkpoint.merge(new File("WikipediaYomigana.txt"));
+        } else {
+            BufferedWriter bwDict = new BufferedWriter(
+                    new OutputStreamWriter(new FileOutputStream(new File("WikipediaYomigana.txt")), "UTF-8"));
+            for (String set : setDict) {
+                bwDict.write(set + "\n");
             }
-            if (line.contains("{{読み仮名")) {
-                processYomiganaLine(line);
+            bwDict.flush();
+            bwDict.close();
+        }
+
+        if (titles != null) {
+            // 結果と最初に見つかった記事名
+            BufferedWriter bwTitle = new BufferedWriter(
+                    new OutputStreamWriter(new FileOutputStream(new File("WikipediaYomiganaTitle.txt")), "UTF-8"));
+            for (Map.Entry<String, String> entry : titles.entrySet()) {
+                bwTitle.write(entry.getKey() + "\t" + entry.getValue() + "\n");
             }
+            bwTitle.flush();
+            bwTitle.close();
+        }
+        if (checkpoint == null) {
+            metrics.count("write", "results", setDict.size());
         }
-        br.close();
 
-        BufferedWriter bwDict = new BufferedWriter(
-                new OutputStreamWriter(new FileOutputStream(new File("WikipediaYomigana.txt")), "UTF-8"));
-        for (String set : setDict) {
-            bwDict.write(set + "\n");
+        if (costs) {
+            metrics.stage("count");
+            CountMinSketch sketch = countSurfaces(DumpScanner.open(bz2, multistream, threads), sketchBytes,
+                    maxLength);
+            addCosts(new File("WikipediaYomigana.txt"), sketch, maxLength);
         }
-        bwDict.flush();
-        bwDict.close();
+        metrics.write(new File("WikipediaYomigana.metrics.json"));
     }
 }
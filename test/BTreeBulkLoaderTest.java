@@ -0,0 +1,140 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Properties;
+import jdbm.RecordManager;
+import jdbm.RecordManagerFactory;
+import jdbm.btree.BTree;
+import jdbm.helper.ByteArraySerializer;
+import jdbm.helper.Serializer;
+import jdbm.helper.StringComparator;
+import jdbm.helper.Tuple;
+import jdbm.helper.TupleBrowser;
+
+/*
+ * BTreeBulkLoaderで構築したBTreeを開き直し、BTree.loadで読めることを確かめる。
+ *
+ * 根と高さはjdbmのBTreeの非公開のフィールドに書くので、jdbmを更新したときはこのテストで確かめること。
+ *
+ * java -cp bin:lib/jdbm-1.0.jar BTreeBulkLoaderTest
+ */
+public class BTreeBulkLoaderTest {
+
+    static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    static String key(int i) {
+        return String.format("よみ%07d", i);
+    }
+
+    static Object value(int i, boolean bytes) {
+        String value = "表記" + i;
+        return bytes ? value.getBytes(StandardCharsets.UTF_8) : value;
+    }
+
+    static boolean sameValue(Object actual, int i, boolean bytes) {
+        Object expected = value(i, bytes);
+        return bytes ? Arrays.equals((byte[]) actual, (byte[]) expected) : expected.equals(actual);
+    }
+
+    // count件を一括で構築し、開き直して前から、後ろから、途中から引く
+    static void roundTrip(File dir, int count, boolean bytes) throws IOException {
+        String name = new File(dir, "bulk-" + count + (bytes ? "-bytes" : "")).getPath();
+        Serializer valueSerializer = bytes ? new ByteArraySerializer() : null;
+        RecordManager recman = RecordManagerFactory.createRecordManager(name, new Properties());
+        BTreeBulkLoader loader = new BTreeBulkLoader(recman, new StringComparator(), null, valueSerializer);
+        for (int i = 0; i < count; i++) {
+            loader.add(key(i), value(i, bytes));
+        }
+        loader.finish();
+        long recid = loader.getRecid();
+        recman.commit();
+        recman.close();
+
+        recman = RecordManagerFactory.createRecordManager(name, new Properties());
+        BTree tree = BTree.load(recman, recid);
+        String label = count + "件" + (bytes ? "(バイト列)" : "") + ": ";
+        check(tree.size() == count, label + "件数が違う " + tree.size());
+
+        TupleBrowser browser = tree.browse();
+        Tuple tuple = new Tuple();
+        for (int i = 0; i < count; i++) {
+            check(browser.getNext(tuple), label + "前から" + i + "件目がない");
+            check(key(i).equals(tuple.getKey()), label + "前から" + i + "件目のキー " + tuple.getKey());
+            check(sameValue(tuple.getValue(), i, bytes), label + "前から" + i + "件目の値");
+        }
+        check(!browser.getNext(tuple), label + "最後より後がある");
+
+        // nullのキーは最大のキーより後ろに位置する
+        browser = tree.browse(null);
+        for (int i = count - 1; i >= 0; i--) {
+            check(browser.getPrevious(tuple), label + "後ろから" + i + "件目がない");
+            check(key(i).equals(tuple.getKey()), label + "後ろから" + i + "件目のキー " + tuple.getKey());
+            check(sameValue(tuple.getValue(), i, bytes), label + "後ろから" + i + "件目の値");
+        }
+        check(!browser.getPrevious(tuple), label + "最初より前がある");
+
+        for (int i = 0; i < count; i += 97) {
+            check(sameValue(tree.find(key(i)), i, bytes), label + "findで引けない " + key(i));
+            browser = tree.browse(key(i));
+            check(browser.getNext(tuple) && key(i).equals(tuple.getKey()), label + "途中から引けない " + key(i));
+            if (i > 0) {
+                check(browser.getPrevious(tuple) && browser.getPrevious(tuple) && key(i - 1).equals(tuple.getKey()),
+                        label + "途中から戻れない " + key(i));
+            }
+        }
+        check(tree.find("ん") == null, label + "ないキーが見つかった");
+        recman.close();
+    }
+
+    // 書き出すページを読み戻すと同じ内容になる
+    static void pageSerializer() throws IOException {
+        BTreeBulkLoader.PageSerializer serializer = new BTreeBulkLoader.PageSerializer(4, null,
+                new ByteArraySerializer());
+        BTreeBulkLoader.Page leaf = new BTreeBulkLoader.Page(true, 4);
+        leaf.first = 1;
+        leaf.keys[1] = "あ";
+        leaf.keys[2] = "い";
+        leaf.values[1] = new byte[] { 1 };
+        leaf.values[2] = new byte[] { 2, 3 };
+        leaf.previous = 11;
+        leaf.next = 12;
+        BTreeBulkLoader.Page read = (BTreeBulkLoader.Page) serializer.deserialize(serializer.serialize(leaf));
+        check(read.leaf && read.first == 1 && read.previous == 11 && read.next == 12, "葉のページの見出し");
+        check(Arrays.equals(read.keys, leaf.keys), "葉のページのキー");
+        check(Arrays.equals((byte[]) read.values[2], new byte[] { 2, 3 }) && read.values[3] == null, "葉のページの値");
+
+        BTreeBulkLoader.Page node = new BTreeBulkLoader.Page(false, 4);
+        node.first = 2;
+        node.keys[2] = "う";
+        node.children[2] = 21;
+        node.children[3] = 22;
+        read = (BTreeBulkLoader.Page) serializer.deserialize(serializer.serialize(node));
+        check(!read.leaf && read.first == 2, "節のページの見出し");
+        check(Arrays.equals(read.keys, node.keys) && Arrays.equals(read.children, node.children), "節のページの子");
+    }
+
+    static public void main(String argv[]) throws Exception {
+        pageSerializer();
+        File dir = java.nio.file.Files.createTempDirectory("bulkload").toFile();
+        try {
+            // ページの境目の前後と、根が3階層以上になる件数
+            int size = BTree.DEFAULT_SIZE;
+            int[] counts = { 0, 1, 2, size - 1, size, size + 1, size * 2, size * 2 + 1, size * size + 1, 50000 };
+            for (int count : counts) {
+                roundTrip(dir, count, false);
+            }
+            roundTrip(dir, 50000, true);
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+        System.out.println("OK");
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * CharArenaのハッシュ表の探査の長さを確かめる。
+ *
+ * 読みのように先頭や文字の種類が偏った仮名の文字列を多数登録し、登録済みの文字列を引くときに
+ * 調べるスロットの数の平均と最大が小さいままであることを確かめる。
+ *
+ * javac -encoding UTF-8 -cp lib/jdbm-1.0.jar -d bin src/*.java test/*.java
+ * java -cp bin:lib/jdbm-1.0.jar CharArenaTest
+ */
+public class CharArenaTest {
+
+    static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    // 平仮名の一部の文字だけを使い、同じ接頭辞を共有する読みと、タブで続く表記を作る
+    static void skewedKana() {
+        CharArena arena = new CharArena();
+        String kana = "あいうえおかきくけこさしすせそたちつてと";
+        StringBuilder sb = new StringBuilder();
+        int count = 0;
+        for (int length = 2; length <= 5; length++) {
+            int[] digits = new int[length];
+            int combinations = (int) Math.min(Math.pow(kana.length(), length), 100000);
+            for (int n = 0; n < combinations; n++) {
+                sb.setLength(0);
+                for (int i = 0, m = n; i < length; i++, m /= kana.length()) {
+                    digits[i] = m % kana.length();
+                    sb.append(kana.charAt(digits[i]));
+                }
+                arena.intern(sb, "");
+                arena.intern(sb, "\t" + sb);
+                count += 2;
+            }
+        }
+        check(arena.size() == count, "重複して登録された: " + arena.size() + " != " + count);
+
+        long total = 0;
+        int max = 0;
+        for (int id = 0; id < arena.size(); id++) {
+            int probes = arena.probeLength(id);
+            total += probes;
+            max = Math.max(max, probes);
+        }
+        double mean = (double) total / arena.size();
+        check(mean < 3, "平均の探査の長さが長い: " + mean);
+        check(max < 64, "最大の探査の長さが長い: " + max);
+    }
+
+    // rehashの後も同じIDを返す
+    static void internAfterRehash() {
+        CharArena arena = new CharArena();
+        for (int i = 0; i < 50000; i++) {
+            check(arena.intern("よみ" + i) == i, "IDが連番でない: " + i);
+        }
+        for (int i = 0; i < 50000; i++) {
+            check(arena.intern("よみ", String.valueOf(i)) == i, "IDが変わった: " + i);
+        }
+    }
+
+    static public void main(String argv[]) {
+        skewedKana();
+        internAfterRehash();
+        System.out.println("OK");
+    }
+}
@@ -0,0 +1,56 @@
+import java.util.regex.Pattern;
+
+/*
+ * CharClassの表が、置き換える前の正規表現と全ての文字(\u0000から￿まで)で同じ判定をすることを確かめる。
+ *
+ * java -cp bin:lib/jdbm-1.0.jar CharClassTest
+ */
+public class CharClassTest {
+
+    static final Pattern HIRAGANA = Pattern.compile("^[ぁ-ゖー]+$");
+    static final Pattern KANA = Pattern.compile("^[ぁ-ゖァ-ヶー]+$");
+    static final Pattern KANA_KANJI = Pattern.compile("^[\\p{InHiragana}\\p{InKatakana}\\p{InCJKunifiedideographs}々]+$");
+    static final Pattern KANJI = Pattern.compile("^[\\p{InCJKunifiedideographs}々]+$");
+    static final Pattern KANJI_GAP = Pattern.compile("[\\p{InCJKunifiedideographs}々ゝゞ]");
+    static final Pattern KANA_BLOCK = Pattern.compile("[\\p{InHiragana}\\p{InKatakana}]");
+
+    static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    static void same(boolean actual, Pattern pattern, String s) {
+        check(actual == pattern.matcher(s).matches(),
+                String.format("判定が違う: U+%04X %s %s", (int) s.charAt(0), pattern.pattern(), actual));
+    }
+
+    static void everyChar() {
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            String s = String.valueOf((char) c);
+            same(CharClass.isAllHiragana(s), HIRAGANA, s);
+            same(CharClass.isAllKana(s), KANA, s);
+            same(CharClass.isAllKanaKanji(s), KANA_KANJI, s);
+            same(CharClass.isAllKanji(s), KANJI, s);
+            same(CharClass.is((char) c, CharClass.KANJI_GAP), KANJI_GAP, s);
+            same(CharClass.is((char) c, CharClass.KANA_BLOCK), KANA_BLOCK, s);
+        }
+    }
+
+    // 複数の文字と空文字列
+    static void strings() {
+        String[] cases = { "", "あいー", "あア", "漢字々", "漢字かな", "カナ漢字", "漢a", "ゝ", "あ\n" };
+        for (String s : cases) {
+            check(CharClass.isAllHiragana(s) == HIRAGANA.matcher(s).matches(), "isAllHiragana: " + s);
+            check(CharClass.isAllKana(s) == KANA.matcher(s).matches(), "isAllKana: " + s);
+            check(CharClass.isAllKanaKanji(s) == KANA_KANJI.matcher(s).matches(), "isAllKanaKanji: " + s);
+            check(CharClass.isAllKanji(s) == KANJI.matcher(s).matches(), "isAllKanji: " + s);
+        }
+    }
+
+    static public void main(String argv[]) {
+        everyChar();
+        strings();
+        System.out.println("OK");
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * EntryArenaのエントリの詰め方を確かめる。
+ *
+ * java -cp bin:lib/jdbm-1.0.jar EntryArenaTest
+ */
+public class EntryArenaTest {
+
+    static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    static void rejects(int reading, int cost, int surface) {
+        try {
+            EntryArena.pack(reading, cost, surface);
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        throw new AssertionError("範囲外を詰めた: " + reading + " " + cost + " " + surface);
+    }
+
+    // 各フィールドの上限までは元に戻り、上限を超えたら例外になる
+    static void packRange() {
+        int reading = EntryArena.MAX_READINGS - 1;
+        int cost = EntryArena.COST_BIAS - 1;
+        int surface = EntryArena.MAX_SURFACES - 1;
+        long e = EntryArena.pack(reading, cost, surface);
+        check(EntryArena.readingOf(e) == reading, "読みID: " + EntryArena.readingOf(e));
+        check(EntryArena.costOf(e) == cost, "コスト: " + EntryArena.costOf(e));
+        check(EntryArena.surfaceOf(e) == surface, "表記ID: " + EntryArena.surfaceOf(e));
+        e = EntryArena.pack(0, -EntryArena.COST_BIAS, 0);
+        check(EntryArena.costOf(e) == -EntryArena.COST_BIAS, "負のコスト: " + EntryArena.costOf(e));
+
+        rejects(EntryArena.MAX_READINGS, 0, 0);
+        rejects(-1, 0, 0);
+        rejects(0, 0, EntryArena.MAX_SURFACES);
+        rejects(0, EntryArena.COST_BIAS, 0);
+        rejects(0, -EntryArena.COST_BIAS - 1, 0);
+    }
+
+    static public void main(String argv[]) {
+        packRange();
+        System.out.println("OK");
+    }
+}
@@ -0,0 +1,141 @@
+import java.util.Random;
+
+/*
+ * KanaAligner.matchesが、置き換える前のExtractWikipediaWord.addWordの正規表現と同じ判定をすることを確かめる。
+ *
+ * java -cp bin:lib/jdbm-1.0.jar KanaAlignerTest
+ */
+public class KanaAlignerTest {
+
+    static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    // 置き換える前のaddWordの判定
+    static boolean regexMatches(String surface, String readingHiragana) {
+        String surfacePattern = surface.replaceAll("[\\p{InCJKunifiedideographs}々ゝゞ]+", ".*");
+        surfacePattern = ExtractWikipediaWord.toWideKatakana(surfacePattern);
+        surfacePattern = surfacePattern.replace("ッ", "[っ|つ]");
+        surfacePattern = surfacePattern.replace("ツ", "[っ|つ]");
+        surfacePattern = surfacePattern.replace("ヤ", "[や|ゃ]");
+        surfacePattern = surfacePattern.replace("ヵ", "[か|が]");
+        surfacePattern = surfacePattern.replace("ヶ", "[ゖ|け|か|が]");
+        surfacePattern = surfacePattern.replace("ケ", "[ゖ|け|か|が]");
+        surfacePattern = surfacePattern.replace("ヰ", "[ゐ|い]");
+        surfacePattern = surfacePattern.replace("ヱ", "[ゑ|え]");
+        surfacePattern = surfacePattern.replace("ヲ", "[を|お]");
+        surfacePattern = ExtractWikipediaWord.toWideHiragana(surfacePattern);
+        return readingHiragana.matches(surfacePattern);
+    }
+
+    static void same(String surface, String reading) {
+        String hiragana = ExtractWikipediaWord.toWideHiragana(reading);
+        boolean expected = regexMatches(surface, hiragana);
+        check(KanaAligner.matches(surface, hiragana) == expected,
+                "判定が違う: " + surface + " " + reading + " 正規表現は" + expected);
+    }
+
+    static void same(String surface, String reading, boolean expected) {
+        same(surface, reading);
+        check(KanaAligner.matches(surface, ExtractWikipediaWord.toWideHiragana(reading)) == expected,
+                "判定が想定と違う: " + surface + " " + reading);
+    }
+
+    static void cases() {
+        // っ/つ
+        same("切っ手", "きって", true);
+        same("切つ手", "きって", true);
+        same("切っ手", "きつて", true);
+        same("ツ橋", "つばし", true);
+        // ヶ/け/か/が
+        same("三ヶ月", "さんかげつ", true);
+        same("三ヶ月", "さんがげつ", true);
+        same("三ヶ月", "さんけげつ", true);
+        same("三ヶ月", "さんこげつ", false);
+        same("三ケ日", "みっかび", true);
+        same("三ヵ所", "さんかしょ", true);
+        same("三ヵ所", "さんけしょ", false);
+        // ひらがなのけもカタカナにしてから置き換えるのでかにも一致する
+        same("け", "か", true);
+        // ゐ/い、ゑ/え、を/お
+        same("ゐ中", "いなか", true);
+        same("ゑ本", "えほん", true);
+        same("ゑ本", "いほん", false);
+        same("を小", "おこ", true);
+        same("を小", "をこ", true);
+        same("お小", "をこ", false);
+        // 小さいゃ
+        same("き刻", "きゃこく", true);
+        same("きゃ刻", "きやこく", false);
+        same("きや刻", "きゃこく", true);
+        same("キャ刻", "きゃこく", true);
+        // 々ゝゞと漢字の並びの間のかな
+        same("人々の", "ひとびとの", true);
+        same("いすゞ", "いすず", true);
+        same("こゝろ", "こころ", true);
+        same("日の出", "ひので", true);
+        same("日の出", "ひのでの", true);
+        same("日の出の", "ひのでの", true);
+        same("日の出の", "ひので", false);
+        same("取り扱い", "とりあつかい", true);
+        same("取り扱い", "とりあつかう", false);
+        same("手の内の", "てのうちの", true);
+        same("手の内の", "てのの", true);
+        same("手の内の", "ての", false);
+        // 漢字の並びが空の文字列に当たる
+        same("あ漢い", "あい", true);
+        same("漢あ", "あ", true);
+        same("漢", "", true);
+        same("あ漢あ", "あ", false);
+        // かなだけの表記
+        same("あいう", "あいう", true);
+        same("アイウ", "あいう", true);
+        same("あいう", "あいうえ", false);
+        same("っつ", "つっ", true);
+        same("", "", true);
+        same("", "あ", false);
+    }
+
+    // 偏った文字から表記と読みを作って比べる
+    static void random() {
+        String surfaceChars = "漢字日本々ゝゞあいかがけゖっつやゃゐゑをおえアカケヶヵッツヤヰヱヲ";
+        String readingChars = "あいうえおかがけゖこっつやゃゐゑをのに";
+        Random random = new Random(1);
+        StringBuilder surface = new StringBuilder();
+        StringBuilder reading = new StringBuilder();
+        for (int n = 0; n < 200000; n++) {
+            surface.setLength(0);
+            reading.setLength(0);
+            int length = 1 + random.nextInt(6);
+            for (int i = 0; i < length; i++) {
+                surface.append(surfaceChars.charAt(random.nextInt(surfaceChars.length())));
+            }
+            if (random.nextBoolean()) {
+                // 表記のかなをそのまま使い、漢字を0から3文字の読みにする
+                for (int i = 0; i < surface.length(); i++) {
+                    char c = surface.charAt(i);
+                    if (CharClass.is(c, CharClass.KANJI_GAP)) {
+                        for (int j = random.nextInt(4); j > 0; j--) {
+                            reading.append(readingChars.charAt(random.nextInt(readingChars.length())));
+                        }
+                    } else {
+                        reading.append(ExtractWikipediaWord.toWideHiragana(c));
+                    }
+                }
+            } else {
+                for (int i = random.nextInt(8); i > 0; i--) {
+                    reading.append(readingChars.charAt(random.nextInt(readingChars.length())));
+                }
+            }
+            same(surface.toString(), reading.toString());
+        }
+    }
+
+    static public void main(String argv[]) {
+        cases();
+        random();
+        System.out.println("OK");
+    }
+}